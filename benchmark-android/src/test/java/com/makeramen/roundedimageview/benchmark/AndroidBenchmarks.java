@@ -0,0 +1,63 @@
+/*
+* Copyright (C) 2017 Vincent Mi
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*      http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+
+package com.makeramen.roundedimageview.benchmark;
+
+import org.junit.Assume;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+/**
+ * Runs the benchmarks that need android.graphics in-process on Robolectric, once per thread count
+ * in {@code -PbenchmarkThreads}. Robolectric doesn't rasterize, so scores cover the library's own
+ * work (allocations, geometry, shader and path setup) but not Skia's. Compare them between
+ * releases, not with numbers from a device.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 25)
+public class AndroidBenchmarks {
+
+  @Test
+  public void run() throws RunnerException {
+    String threads = System.getProperty("benchmarkThreads");
+    // only run when asked for, not as part of every test run
+    Assume.assumeTrue(threads != null);
+
+    String include = System.getProperty("benchmarkInclude", "Conversion|Transformation");
+    String results = System.getProperty("benchmarkResults", "build/reports/jmh");
+    for (String count : threads.split(",")) {
+      int threadCount = Integer.parseInt(count.trim());
+      ChainedOptionsBuilder options = new OptionsBuilder()
+          .include(getClass().getPackage().getName() + ".*(" + include + ").*")
+          // forked JVMs wouldn't run inside the Robolectric sandbox
+          .forks(0)
+          .warmupIterations(5)
+          .measurementIterations(10)
+          .threads(threadCount)
+          .resultFormat(ResultFormatType.JSON)
+          .result(results + "/results-" + threadCount + "-threads.json");
+      new Runner(options.build()).run();
+    }
+  }
+}
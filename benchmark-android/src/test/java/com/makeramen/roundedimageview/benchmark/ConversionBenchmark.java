@@ -0,0 +1,78 @@
+/*
+* Copyright (C) 2017 Vincent Mi
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*      http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+
+package com.makeramen.roundedimageview.benchmark;
+
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.drawable.BitmapDrawable;
+import android.graphics.drawable.Drawable;
+import android.graphics.drawable.GradientDrawable;
+import com.makeramen.roundedimageview.RoundedDrawable;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures {@link RoundedDrawable#fromDrawable} for a bitmap, which is wrapped, and a shape,
+ * which is rasterized, and {@link RoundedDrawable#drawableToBitmap} on its own. Each thread
+ * converts its own drawables since conversion sets their bounds.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ConversionBenchmark {
+
+  @Param({ "48", "256" })
+  public int size;
+
+  private Drawable mBitmapDrawable;
+  private Drawable mShapeDrawable;
+
+  @Setup
+  public void setUp() {
+    Bitmap bitmap = Bitmap.createBitmap(size, size, Bitmap.Config.ARGB_8888);
+    mBitmapDrawable = new BitmapDrawable(Resources.getSystem(), bitmap);
+
+    GradientDrawable shape = new GradientDrawable();
+    shape.setColor(0xff336699);
+    shape.setStroke(2, 0xff000000);
+    shape.setSize(size, size);
+    mShapeDrawable = shape;
+  }
+
+  @Benchmark
+  public Drawable fromBitmapDrawable() {
+    return RoundedDrawable.fromDrawable(mBitmapDrawable);
+  }
+
+  @Benchmark
+  public Drawable fromShapeDrawable() {
+    return RoundedDrawable.fromDrawable(mShapeDrawable);
+  }
+
+  @Benchmark
+  public Bitmap drawableToBitmap() {
+    return RoundedDrawable.drawableToBitmap(mShapeDrawable);
+  }
+}
@@ -0,0 +1,71 @@
+/*
+* Copyright (C) 2017 Vincent Mi
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*      http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+
+package com.makeramen.roundedimageview.benchmark;
+
+import android.graphics.Bitmap;
+import android.widget.ImageView.ScaleType;
+import com.makeramen.roundedimageview.RoundedTransformationBuilder;
+import com.squareup.picasso.Transformation;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures the Picasso transformation the way Picasso runs it, one shared instance called from
+ * several worker threads. The transformation recycles its input, so every call decodes into a
+ * fresh source bitmap and that allocation is part of the score.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class TransformationBenchmark {
+
+  private static final int SOURCE_SIZE = 512;
+
+  @Param({ "128", "512" })
+  public int size;
+
+  @Param({ "false", "true" })
+  public boolean oval;
+
+  private Transformation mTransformation;
+
+  @Setup
+  public void setUp() {
+    mTransformation = new RoundedTransformationBuilder()
+        .scaleType(ScaleType.CENTER_CROP)
+        .cornerRadius(size / 8f)
+        .borderWidth(size / 32f)
+        .borderColor(0xff336699)
+        .oval(oval)
+        .targetSize(size, size)
+        .build();
+  }
+
+  @Benchmark
+  public Bitmap transform() {
+    Bitmap source = Bitmap.createBitmap(SOURCE_SIZE, SOURCE_SIZE, Bitmap.Config.ARGB_8888);
+    return mTransformation.transform(source);
+  }
+}
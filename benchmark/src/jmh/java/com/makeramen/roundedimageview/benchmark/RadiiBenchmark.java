@@ -0,0 +1,56 @@
+/*
+* Copyright (C) 2017 Vincent Mi
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*      http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package com.makeramen.roundedimageview.benchmark;
+
+import com.makeramen.roundedimageview.core.Radii;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures the radius validation and checks run by every {@code setCornerRadius} call and draw.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class RadiiBenchmark {
+
+  public float[] uniform = { 12f, 12f, 12f, 12f };
+  public float[] mixed = { 12f, 0f, 12f, 0f };
+
+  @Benchmark
+  public float checkFourCorners() {
+    return Radii.check(mixed[0]) + Radii.check(mixed[1]) + Radii.check(mixed[2])
+        + Radii.check(mixed[3]);
+  }
+
+  @Benchmark
+  public void isUniform(Blackhole bh) {
+    bh.consume(Radii.isUniform(uniform));
+    bh.consume(Radii.isUniform(mixed));
+  }
+
+  @Benchmark
+  public float max() {
+    return Radii.max(mixed);
+  }
+}
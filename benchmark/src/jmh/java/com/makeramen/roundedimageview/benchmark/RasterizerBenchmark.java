@@ -0,0 +1,106 @@
+/*
+* Copyright (C) 2017 Vincent Mi
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*      http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package com.makeramen.roundedimageview.benchmark;
+
+import com.makeramen.roundedimageview.core.RasterBatch;
+import com.makeramen.roundedimageview.core.RasterImage;
+import com.makeramen.roundedimageview.core.RoundedRasterizer;
+import com.makeramen.roundedimageview.core.ScaleMode;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Measures the server side avatar path: one image at a time, and a batch on a ForkJoin pool.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class RasterizerBenchmark {
+
+  private static final int SOURCE_WIDTH = 640;
+  private static final int SOURCE_HEIGHT = 480;
+  private static final int BATCH_SIZE = 64;
+
+  @Param({ "128", "1024" })
+  public int size;
+
+  @Param({ "false", "true" })
+  public boolean oval;
+
+  @Param({ "false", "true" })
+  public boolean filter;
+
+  private RoundedRasterizer mRasterizer;
+  private RasterImage mSource;
+  private List<RasterImage> mBatch;
+  private ForkJoinPool mPool;
+  private RasterBatch mRasterBatch;
+
+  @Setup
+  public void setUp() {
+    mRasterizer = new RoundedRasterizer.Builder()
+        .scaleMode(ScaleMode.CENTER_CROP)
+        .cornerRadius(size / 8f)
+        .oval(oval)
+        .borderWidth(size / 32f)
+        .borderColor(0xff336699)
+        .filterBitmap(filter)
+        .build();
+
+    int[] pixels = new int[SOURCE_WIDTH * SOURCE_HEIGHT];
+    Random random = new Random(0);
+    for (int i = 0; i < pixels.length; i++) {
+      pixels[i] = 0xff000000 | random.nextInt(0xffffff);
+    }
+    mSource = new RasterImage(pixels, SOURCE_WIDTH, SOURCE_HEIGHT);
+
+    mBatch = new ArrayList<>(BATCH_SIZE);
+    for (int i = 0; i < BATCH_SIZE; i++) {
+      mBatch.add(mSource);
+    }
+    mPool = new ForkJoinPool();
+    mRasterBatch = new RasterBatch(mPool);
+  }
+
+  @TearDown
+  public void tearDown() {
+    mPool.shutdown();
+  }
+
+  @Benchmark
+  public RasterImage single() {
+    return mRasterizer.render(mSource, size, size);
+  }
+
+  /** Throughput of this one is batches per second, multiply by 64 for images. */
+  @Benchmark
+  public List<RasterImage> batch() {
+    return mRasterBatch.render(mRasterizer, mBatch, size, size);
+  }
+}
@@ -0,0 +1,75 @@
+/*
+* Copyright (C) 2017 Vincent Mi
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*      http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package com.makeramen.roundedimageview.benchmark;
+
+import com.makeramen.roundedimageview.core.ScaleMode;
+import com.makeramen.roundedimageview.core.ShaderGeometry;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures the per-bounds-change geometry of {@code RoundedDrawable} for each scale type.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ShaderGeometryBenchmark {
+
+  @Param({ "CENTER", "CENTER_CROP", "CENTER_INSIDE", "FIT_CENTER", "FIT_END", "FIT_START",
+      "FIT_XY" })
+  public String scaleMode;
+
+  // a landscape photo into a square avatar, so every scale type has slack on one axis
+  @Param({ "1024x768" })
+  public String bitmapSize;
+
+  private final ShaderGeometry mGeometry = new ShaderGeometry();
+  private ScaleMode mMode;
+  private int mBitmapWidth;
+  private int mBitmapHeight;
+  private float mSize;
+
+  @Setup
+  public void setUp() {
+    mMode = ScaleMode.valueOf(scaleMode);
+    String[] size = bitmapSize.split("x");
+    mBitmapWidth = Integer.parseInt(size[0]);
+    mBitmapHeight = Integer.parseInt(size[1]);
+    mSize = 144;
+  }
+
+  @Benchmark
+  public ShaderGeometry compute() {
+    return mGeometry.compute(mMode, mBitmapWidth, mBitmapHeight, 0, 0, mSize, mSize, 6);
+  }
+
+  @Benchmark
+  public float computeResizing() {
+    // alternate sizes like a view being laid out, so nothing can be hoisted out of the loop
+    mSize = mSize == 144 ? 145 : 144;
+    ShaderGeometry geometry =
+        mGeometry.compute(mMode, mBitmapWidth, mBitmapHeight, 0, 0, mSize, mSize, 6);
+    return geometry.getScaleX() + geometry.getTranslateX() + geometry.getRight();
+  }
+}
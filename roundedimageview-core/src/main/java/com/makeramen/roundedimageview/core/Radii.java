@@ -0,0 +1,58 @@
+/*
+* Copyright (C) 2017 Vincent Mi
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*      http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package com.makeramen.roundedimageview.core;
+
+/**
+ * Corner radius helpers. Radii arrays are indexed top left, top right, bottom right, bottom left.
+ */
+public final class Radii {
+
+  private Radii() {
+  }
+
+  /**
+   * @return {@code radius}, so it can be checked inline.
+   * @throws IllegalArgumentException if {@code radius} is negative, infinite or NaN.
+   */
+  public static float check(float radius) {
+    if (Float.isInfinite(radius) || Float.isNaN(radius) || radius < 0) {
+      throw new IllegalArgumentException("Invalid radius value: " + radius);
+    }
+    return radius;
+  }
+
+  /**
+   * @return true if all the radii are equal.
+   */
+  public static boolean isUniform(float[] radii) {
+    for (int i = 1, len = radii.length; i < len; i++) {
+      if (radii[i] != radii[0]) { return false; }
+    }
+    return true;
+  }
+
+  /**
+   * @return the largest of the radii, or 0 if there are none.
+   */
+  public static float max(float[] radii) {
+    float max = 0;
+    for (float r : radii) {
+      max = Math.max(max, r);
+    }
+    return max;
+  }
+}
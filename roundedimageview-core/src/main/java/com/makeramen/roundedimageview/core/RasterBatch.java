@@ -0,0 +1,147 @@
+/*
+* Copyright (C) 2017 Vincent Mi
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*      http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package com.makeramen.roundedimageview.core;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Renders batches of images with a {@link RoundedRasterizer} on a {@link ForkJoinPool}. Each image
+ * is its own task, and images larger than {@link #TILE_THRESHOLD} pixels are further split into
+ * tiles of rows so a few large images still keep every core busy.
+ */
+public final class RasterBatch {
+
+  /** Images with at least this many pixels are rendered in row tiles. */
+  public static final int TILE_THRESHOLD = 512 * 512;
+  /** The number of rows per tile. */
+  public static final int TILE_ROWS = 64;
+
+  private final ForkJoinPool mPool;
+
+  /**
+   * Creates a batch renderer with a pool of one thread per available processor.
+   */
+  public RasterBatch() {
+    this(new ForkJoinPool());
+  }
+
+  public RasterBatch(ForkJoinPool pool) {
+    mPool = pool;
+  }
+
+  /**
+   * Renders every source at the given size and returns the results in the same order.
+   */
+  public List<RasterImage> render(RoundedRasterizer rasterizer, List<RasterImage> sources,
+      int width, int height) {
+    List<RasterImage> targets = new ArrayList<>(sources.size());
+    for (int i = 0, size = sources.size(); i < size; i++) {
+      targets.add(new RasterImage(width, height));
+    }
+    render(rasterizer, sources, targets);
+    return targets;
+  }
+
+  /**
+   * Renders {@code sources.get(i)} into {@code targets.get(i)} for every i.
+   *
+   * @throws IllegalArgumentException if the lists have different sizes.
+   */
+  public void render(RoundedRasterizer rasterizer, List<RasterImage> sources,
+      List<RasterImage> targets) {
+    if (sources.size() != targets.size()) {
+      throw new IllegalArgumentException(
+          "sources and targets differ in size: " + sources.size() + " != " + targets.size());
+    }
+    if (sources.isEmpty()) {
+      return;
+    }
+    mPool.invoke(new ImagesTask(rasterizer, sources, targets, 0, sources.size()));
+  }
+
+  /**
+   * Splits a range of images in halves until there is one image left.
+   */
+  private static final class ImagesTask extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    private final RoundedRasterizer mRasterizer;
+    private final List<RasterImage> mSources;
+    private final List<RasterImage> mTargets;
+    private final int mFrom;
+    private final int mTo;
+
+    ImagesTask(RoundedRasterizer rasterizer, List<RasterImage> sources,
+        List<RasterImage> targets, int from, int to) {
+      mRasterizer = rasterizer;
+      mSources = sources;
+      mTargets = targets;
+      mFrom = from;
+      mTo = to;
+    }
+
+    @Override protected void compute() {
+      if (mTo - mFrom > 1) {
+        int mid = (mFrom + mTo) >>> 1;
+        invokeAll(new ImagesTask(mRasterizer, mSources, mTargets, mFrom, mid),
+            new ImagesTask(mRasterizer, mSources, mTargets, mid, mTo));
+        return;
+      }
+
+      RasterImage source = mSources.get(mFrom);
+      RasterImage target = mTargets.get(mFrom);
+      int height = target.getHeight();
+      if (target.getWidth() * height < TILE_THRESHOLD) {
+        mRasterizer.render(source, target);
+        return;
+      }
+
+      List<RowsTask> tiles = new ArrayList<>((height + TILE_ROWS - 1) / TILE_ROWS);
+      for (int row = 0; row < height; row += TILE_ROWS) {
+        int end = Math.min(row + TILE_ROWS, height);
+        tiles.add(new RowsTask(mRasterizer, source, target, row, end));
+      }
+      invokeAll(tiles);
+    }
+  }
+
+  private static final class RowsTask extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    private final RoundedRasterizer mRasterizer;
+    private final RasterImage mSource;
+    private final RasterImage mTarget;
+    private final int mFromRow;
+    private final int mToRow;
+
+    RowsTask(RoundedRasterizer rasterizer, RasterImage source, RasterImage target, int fromRow,
+        int toRow) {
+      mRasterizer = rasterizer;
+      mSource = source;
+      mTarget = target;
+      mFromRow = fromRow;
+      mToRow = toRow;
+    }
+
+    @Override protected void compute() {
+      mRasterizer.renderRows(mSource, mTarget, mFromRow, mToRow);
+    }
+  }
+}
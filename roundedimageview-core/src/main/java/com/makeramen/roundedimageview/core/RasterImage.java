@@ -0,0 +1,70 @@
+/*
+* Copyright (C) 2017 Vincent Mi
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*      http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package com.makeramen.roundedimageview.core;
+
+/**
+ * A non-premultiplied ARGB image backed by an {@code int[]}, in the same layout as
+ * {@code Bitmap.getPixels()} and {@code BufferedImage.TYPE_INT_ARGB}: one pixel per int, rows top
+ * to bottom, no padding between rows.
+ */
+public final class RasterImage {
+
+  private final int[] mPixels;
+  private final int mWidth;
+  private final int mHeight;
+
+  /**
+   * Creates a fully transparent image.
+   */
+  public RasterImage(int width, int height) {
+    this(new int[checkSize(width, height)], width, height);
+  }
+
+  /**
+   * Wraps existing pixels without copying them.
+   *
+   * @throws IllegalArgumentException if {@code pixels} is shorter than {@code width * height}.
+   */
+  public RasterImage(int[] pixels, int width, int height) {
+    if (pixels.length < checkSize(width, height)) {
+      throw new IllegalArgumentException(
+          "pixels too short for " + width + "x" + height + ": " + pixels.length);
+    }
+    mPixels = pixels;
+    mWidth = width;
+    mHeight = height;
+  }
+
+  private static int checkSize(int width, int height) {
+    if (width <= 0 || height <= 0) {
+      throw new IllegalArgumentException("Invalid size: " + width + "x" + height);
+    }
+    return width * height;
+  }
+
+  public int[] getPixels() {
+    return mPixels;
+  }
+
+  public int getWidth() {
+    return mWidth;
+  }
+
+  public int getHeight() {
+    return mHeight;
+  }
+}
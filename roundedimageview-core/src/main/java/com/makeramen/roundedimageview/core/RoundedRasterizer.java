@@ -0,0 +1,332 @@
+/*
+* Copyright (C) 2017 Vincent Mi
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*      http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package com.makeramen.roundedimageview.core;
+
+/**
+ * Renders an image with rounded corners or as an oval, with an optional border, into an
+ * {@code int[]} ARGB buffer. It uses the same {@link ShaderGeometry} as {@code RoundedDrawable}, so
+ * a server rendering avatars with the same settings as the app gets the same placement and shape.
+ *
+ * <p>Edges are anti-aliased by pixel coverage. By default the source is point sampled like the
+ * drawable's paint, {@link Builder#filterBitmap(boolean)} turns on bilinear filtering for better
+ * quality downscales.
+ *
+ * <p>Instances are immutable and can be shared between threads, see {@link RasterBatch} for
+ * rendering many images in parallel.
+ */
+public final class RoundedRasterizer {
+
+  // radii array indices, matching com.makeramen.roundedimageview.Corner
+  private static final int TOP_LEFT = 0;
+  private static final int TOP_RIGHT = 1;
+  private static final int BOTTOM_RIGHT = 2;
+  private static final int BOTTOM_LEFT = 3;
+
+  private final ScaleMode mScaleMode;
+  private final float[] mCornerRadii;
+  private final boolean mOval;
+  private final float mBorderWidth;
+  private final int mBorderColor;
+  private final boolean mFilterBitmap;
+
+  private RoundedRasterizer(Builder builder) {
+    mScaleMode = builder.mScaleMode;
+    mCornerRadii = builder.mCornerRadii.clone();
+    mOval = builder.mOval;
+    mBorderWidth = builder.mBorderWidth;
+    mBorderColor = builder.mBorderColor;
+    mFilterBitmap = builder.mFilterBitmap;
+  }
+
+  /**
+   * Renders {@code source} into a new image of the given size.
+   */
+  public RasterImage render(RasterImage source, int width, int height) {
+    RasterImage target = new RasterImage(width, height);
+    render(source, target);
+    return target;
+  }
+
+  /**
+   * Renders {@code source} into {@code target}, overwriting all of its pixels.
+   */
+  public void render(RasterImage source, RasterImage target) {
+    renderRows(source, target, 0, target.getHeight());
+  }
+
+  /**
+   * Renders rows {@code [fromRow, toRow)} of {@code target}. Different row ranges of the same
+   * target can be rendered concurrently.
+   */
+  void renderRows(RasterImage source, RasterImage target, int fromRow, int toRow) {
+    final int[] src = source.getPixels();
+    final int srcWidth = source.getWidth();
+    final int srcHeight = source.getHeight();
+    final int[] dst = target.getPixels();
+    final int width = target.getWidth();
+
+    final ShaderGeometry geometry = new ShaderGeometry().compute(mScaleMode, srcWidth, srcHeight,
+        0, 0, width, target.getHeight(), mBorderWidth);
+    final float scaleX = geometry.getScaleX();
+    final float scaleY = geometry.getScaleY();
+    final float translateX = geometry.getTranslateX();
+    final float translateY = geometry.getTranslateY();
+    final float centerX = (geometry.getLeft() + geometry.getRight()) / 2;
+    final float centerY = (geometry.getTop() + geometry.getBottom()) / 2;
+    final float halfWidth = (geometry.getRight() - geometry.getLeft()) / 2;
+    final float halfHeight = (geometry.getBottom() - geometry.getTop()) / 2;
+
+    final float halfBorder = mBorderWidth / 2;
+    final float borderAlpha = (mBorderColor >>> 24) / 255f;
+    final float borderR = ((mBorderColor >> 16) & 0xff) * borderAlpha;
+    final float borderG = ((mBorderColor >> 8) & 0xff) * borderAlpha;
+    final float borderB = (mBorderColor & 0xff) * borderAlpha;
+    final boolean drawBorder = mBorderWidth > 0 && borderAlpha > 0;
+
+    // premultiplied sample, reused for every pixel
+    final float[] sample = new float[4];
+
+    for (int y = fromRow; y < toRow; y++) {
+      final float py = y + 0.5f;
+      final float v = (py - translateY) / scaleY;
+      int out = y * width;
+      for (int x = 0; x < width; x++, out++) {
+        final float px = x + 0.5f;
+        final float d = mOval
+            ? ovalDistance(px - centerX, py - centerY, halfWidth, halfHeight)
+            : roundRectDistance(px - centerX, py - centerY, halfWidth, halfHeight);
+
+        float a = 0;
+        float r = 0;
+        float g = 0;
+        float b = 0;
+
+        final float fill = clamp01(0.5f - d);
+        if (fill > 0) {
+          final float u = (px - translateX) / scaleX;
+          if (mFilterBitmap) {
+            sampleBilinear(src, srcWidth, srcHeight, u, v, sample);
+          } else {
+            sampleNearest(src, srcWidth, srcHeight, u, v, sample);
+          }
+          a = sample[0] * fill;
+          r = sample[1] * fill;
+          g = sample[2] * fill;
+          b = sample[3] * fill;
+        }
+
+        if (drawBorder) {
+          final float coverage = clamp01(halfBorder + 0.5f - Math.abs(d));
+          if (coverage > 0) {
+            // src-over with the border on top
+            final float keep = 1 - borderAlpha * coverage;
+            a = 255 * borderAlpha * coverage + a * keep;
+            r = borderR * coverage + r * keep;
+            g = borderG * coverage + g * keep;
+            b = borderB * coverage + b * keep;
+          }
+        }
+
+        dst[out] = unpremultiply(a, r, g, b);
+      }
+    }
+  }
+
+  /**
+   * Signed distance from a point, relative to the center, to the edge of the rounded rect: negative
+   * inside, positive outside.
+   */
+  private float roundRectDistance(float x, float y, float halfWidth, float halfHeight) {
+    if (halfWidth <= 0 || halfHeight <= 0) {
+      return Float.POSITIVE_INFINITY;
+    }
+    final int corner = y < 0
+        ? (x < 0 ? TOP_LEFT : TOP_RIGHT)
+        : (x < 0 ? BOTTOM_LEFT : BOTTOM_RIGHT);
+    final float radius = Math.min(mCornerRadii[corner], Math.min(halfWidth, halfHeight));
+    final float qx = Math.abs(x) - (halfWidth - radius);
+    final float qy = Math.abs(y) - (halfHeight - radius);
+    if (qx > 0 && qy > 0) {
+      return (float) Math.sqrt(qx * qx + qy * qy) - radius;
+    }
+    return Math.max(qx, qy) - radius;
+  }
+
+  /**
+   * Approximate signed distance to the edge of the ellipse, exact enough within a pixel of it which
+   * is all the coverage needs.
+   */
+  private static float ovalDistance(float x, float y, float halfWidth, float halfHeight) {
+    if (halfWidth <= 0 || halfHeight <= 0) {
+      return Float.POSITIVE_INFINITY;
+    }
+    final float nx = x / halfWidth;
+    final float ny = y / halfHeight;
+    final float f = nx * nx + ny * ny - 1;
+    final float gx = nx / halfWidth;
+    final float gy = ny / halfHeight;
+    final float gradient = 2 * (float) Math.sqrt(gx * gx + gy * gy);
+    if (gradient == 0) {
+      return -Math.min(halfWidth, halfHeight);
+    }
+    return f / gradient;
+  }
+
+  private static void sampleNearest(int[] src, int width, int height, float u, float v,
+      float[] out) {
+    final int x = clamp((int) Math.floor(u), width);
+    final int y = clamp((int) Math.floor(v), height);
+    premultiply(src[y * width + x], 1, out, true);
+  }
+
+  private static void sampleBilinear(int[] src, int width, int height, float u, float v,
+      float[] out) {
+    final float fu = u - 0.5f;
+    final float fv = v - 0.5f;
+    final int x0 = (int) Math.floor(fu);
+    final int y0 = (int) Math.floor(fv);
+    final float wx = fu - x0;
+    final float wy = fv - y0;
+    final int left = clamp(x0, width);
+    final int right = clamp(x0 + 1, width);
+    final int top = clamp(y0, height) * width;
+    final int bottom = clamp(y0 + 1, height) * width;
+
+    premultiply(src[top + left], (1 - wx) * (1 - wy), out, true);
+    premultiply(src[top + right], wx * (1 - wy), out, false);
+    premultiply(src[bottom + left], (1 - wx) * wy, out, false);
+    premultiply(src[bottom + right], wx * wy, out, false);
+  }
+
+  /**
+   * Writes or adds {@code color} premultiplied and scaled by {@code weight} to {@code out} as
+   * {@code [a, r, g, b]} in 0..255.
+   */
+  private static void premultiply(int color, float weight, float[] out, boolean set) {
+    final float alpha = (color >>> 24) / 255f;
+    final float w = alpha * weight;
+    final float a = (color >>> 24) * weight;
+    final float r = ((color >> 16) & 0xff) * w;
+    final float g = ((color >> 8) & 0xff) * w;
+    final float b = (color & 0xff) * w;
+    if (set) {
+      out[0] = a;
+      out[1] = r;
+      out[2] = g;
+      out[3] = b;
+    } else {
+      out[0] += a;
+      out[1] += r;
+      out[2] += g;
+      out[3] += b;
+    }
+  }
+
+  private static int unpremultiply(float a, float r, float g, float b) {
+    if (a <= 0) {
+      return 0;
+    }
+    final float scale = 255 / a;
+    return Math.round(Math.min(a, 255)) << 24
+        | Math.min(Math.round(r * scale), 255) << 16
+        | Math.min(Math.round(g * scale), 255) << 8
+        | Math.min(Math.round(b * scale), 255);
+  }
+
+  private static int clamp(int i, int size) {
+    return i < 0 ? 0 : (i >= size ? size - 1 : i);
+  }
+
+  private static float clamp01(float f) {
+    return f <= 0 ? 0 : (f >= 1 ? 1 : f);
+  }
+
+  /**
+   * Builds {@link RoundedRasterizer}s, with the same defaults as {@code RoundedDrawable}.
+   */
+  public static final class Builder {
+    private ScaleMode mScaleMode = ScaleMode.FIT_CENTER;
+    private final float[] mCornerRadii = new float[4];
+    private boolean mOval;
+    private float mBorderWidth;
+    private int mBorderColor = 0xff000000;
+    private boolean mFilterBitmap;
+
+    public Builder scaleMode(ScaleMode scaleMode) {
+      mScaleMode = scaleMode;
+      return this;
+    }
+
+    /**
+     * Set corner radius for all corners in px.
+     */
+    public Builder cornerRadius(float radius) {
+      return cornerRadius(radius, radius, radius, radius);
+    }
+
+    /**
+     * Set corner radii in px, clockwise from the top left.
+     */
+    public Builder cornerRadius(float topLeft, float topRight, float bottomRight,
+        float bottomLeft) {
+      mCornerRadii[TOP_LEFT] = topLeft;
+      mCornerRadii[TOP_RIGHT] = topRight;
+      mCornerRadii[BOTTOM_RIGHT] = bottomRight;
+      mCornerRadii[BOTTOM_LEFT] = bottomLeft;
+      return this;
+    }
+
+    public Builder oval(boolean oval) {
+      mOval = oval;
+      return this;
+    }
+
+    /**
+     * Set border width in px.
+     */
+    public Builder borderWidth(float width) {
+      mBorderWidth = width;
+      return this;
+    }
+
+    /**
+     * Set the non-premultiplied ARGB border color.
+     */
+    public Builder borderColor(int color) {
+      mBorderColor = color;
+      return this;
+    }
+
+    /**
+     * Use bilinear filtering instead of point sampling the source.
+     */
+    public Builder filterBitmap(boolean filter) {
+      mFilterBitmap = filter;
+      return this;
+    }
+
+    /**
+     * @throws IllegalArgumentException if a radius is negative, infinite or NaN.
+     */
+    public RoundedRasterizer build() {
+      for (float r : mCornerRadii) {
+        Radii.check(r);
+      }
+      return new RoundedRasterizer(this);
+    }
+  }
+}
@@ -0,0 +1,31 @@
+/*
+* Copyright (C) 2017 Vincent Mi
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*      http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package com.makeramen.roundedimageview.core;
+
+/**
+ * The scale types supported by the rounding geometry, mirroring the ones of
+ * {@code ImageView.ScaleType} apart from {@code MATRIX}, which is treated as {@link #FIT_CENTER}.
+ */
+public enum ScaleMode {
+  CENTER,
+  CENTER_CROP,
+  CENTER_INSIDE,
+  FIT_CENTER,
+  FIT_END,
+  FIT_START,
+  FIT_XY
+}
@@ -0,0 +1,213 @@
+/*
+* Copyright (C) 2017 Vincent Mi
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*      http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package com.makeramen.roundedimageview.core;
+
+/**
+ * Computes where a bitmap is drawn for a scale type, bounds and border width: the scale and
+ * translation mapping bitmap pixels to bounds, and the rect the bitmap and the center of the border
+ * stroke are drawn in. This is the math behind {@code RoundedDrawable}, kept free of
+ * {@code android.graphics} so it can be reused and measured on a plain JVM.
+ *
+ * <p>Instances are mutable and meant to be reused, {@link #compute} overwrites all the results.
+ */
+public final class ShaderGeometry {
+
+  private float mScaleX = 1;
+  private float mScaleY = 1;
+  private float mTranslateX;
+  private float mTranslateY;
+  private float mLeft;
+  private float mTop;
+  private float mRight;
+  private float mBottom;
+
+  /**
+   * @param mode the scale type.
+   * @param bitmapWidth the width of the source bitmap in px.
+   * @param bitmapHeight the height of the source bitmap in px.
+   * @param left the left of the bounds.
+   * @param top the top of the bounds.
+   * @param right the right of the bounds.
+   * @param bottom the bottom of the bounds.
+   * @param borderWidth the border width in px.
+   * @return this geometry, for chaining.
+   */
+  public ShaderGeometry compute(ScaleMode mode, int bitmapWidth, int bitmapHeight,
+      float left, float top, float right, float bottom, float borderWidth) {
+    final float width = right - left;
+    final float height = bottom - top;
+    final float inset = borderWidth / 2;
+    float scale;
+    float dx;
+    float dy;
+
+    switch (mode) {
+      case CENTER:
+        setRect(left + inset, top + inset, right - inset, bottom - inset);
+        setMatrix(1, 1, (int) ((mRight - mLeft - bitmapWidth) * 0.5f + 0.5f),
+            (int) ((mBottom - mTop - bitmapHeight) * 0.5f + 0.5f));
+        break;
+
+      case CENTER_CROP:
+        setRect(left + inset, top + inset, right - inset, bottom - inset);
+        float innerWidth = mRight - mLeft;
+        float innerHeight = mBottom - mTop;
+
+        dx = 0;
+        dy = 0;
+
+        if (bitmapWidth * innerHeight > innerWidth * bitmapHeight) {
+          scale = innerHeight / (float) bitmapHeight;
+          dx = (innerWidth - bitmapWidth * scale) * 0.5f;
+        } else {
+          scale = innerWidth / (float) bitmapWidth;
+          dy = (innerHeight - bitmapHeight * scale) * 0.5f;
+        }
+
+        setMatrix(scale, scale, (int) (dx + 0.5f) + inset, (int) (dy + 0.5f) + inset);
+        break;
+
+      case CENTER_INSIDE:
+        if (bitmapWidth <= width && bitmapHeight <= height) {
+          scale = 1.0f;
+        } else {
+          scale = Math.min(width / (float) bitmapWidth, height / (float) bitmapHeight);
+        }
+
+        dx = (int) ((width - bitmapWidth * scale) * 0.5f + 0.5f);
+        dy = (int) ((height - bitmapHeight * scale) * 0.5f + 0.5f);
+
+        setRect(dx + inset, dy + inset,
+            dx + bitmapWidth * scale - inset, dy + bitmapHeight * scale - inset);
+        fill(bitmapWidth, bitmapHeight);
+        break;
+
+      default:
+      case FIT_CENTER:
+        fit(bitmapWidth, bitmapHeight, left, top, width, height, 0.5f);
+        inset(inset);
+        fill(bitmapWidth, bitmapHeight);
+        break;
+
+      case FIT_END:
+        fit(bitmapWidth, bitmapHeight, left, top, width, height, 1f);
+        inset(inset);
+        fill(bitmapWidth, bitmapHeight);
+        break;
+
+      case FIT_START:
+        fit(bitmapWidth, bitmapHeight, left, top, width, height, 0f);
+        inset(inset);
+        fill(bitmapWidth, bitmapHeight);
+        break;
+
+      case FIT_XY:
+        setRect(left + inset, top + inset, right - inset, bottom - inset);
+        fill(bitmapWidth, bitmapHeight);
+        break;
+    }
+    return this;
+  }
+
+  /**
+   * Scales the bitmap uniformly to fit in the bounds and sets the rect to where it lands, with the
+   * slack on the longer axis distributed by {@code align}: 0 for start, 0.5 for center, 1 for end.
+   */
+  private void fit(int bitmapWidth, int bitmapHeight, float left, float top, float width,
+      float height, float align) {
+    if (bitmapWidth <= 0 || bitmapHeight <= 0) {
+      setRect(0, 0, bitmapWidth, bitmapHeight);
+      return;
+    }
+    float scale = Math.min(width / bitmapWidth, height / bitmapHeight);
+    float x = left + (width - bitmapWidth * scale) * align;
+    float y = top + (height - bitmapHeight * scale) * align;
+    setRect(x, y, x + bitmapWidth * scale, y + bitmapHeight * scale);
+  }
+
+  private void inset(float inset) {
+    mLeft += inset;
+    mTop += inset;
+    mRight -= inset;
+    mBottom -= inset;
+  }
+
+  /**
+   * Sets the matrix that stretches the whole bitmap to the rect.
+   */
+  private void fill(int bitmapWidth, int bitmapHeight) {
+    if (bitmapWidth <= 0 || bitmapHeight <= 0) {
+      setMatrix(1, 1, 0, 0);
+    } else {
+      setMatrix((mRight - mLeft) / bitmapWidth, (mBottom - mTop) / bitmapHeight, mLeft, mTop);
+    }
+  }
+
+  private void setRect(float left, float top, float right, float bottom) {
+    mLeft = left;
+    mTop = top;
+    mRight = right;
+    mBottom = bottom;
+  }
+
+  private void setMatrix(float scaleX, float scaleY, float translateX, float translateY) {
+    mScaleX = scaleX;
+    mScaleY = scaleY;
+    mTranslateX = translateX;
+    mTranslateY = translateY;
+  }
+
+  /** @return the horizontal scale from bitmap pixels to bounds. */
+  public float getScaleX() {
+    return mScaleX;
+  }
+
+  /** @return the vertical scale from bitmap pixels to bounds. */
+  public float getScaleY() {
+    return mScaleY;
+  }
+
+  /** @return the horizontal translation applied after scaling. */
+  public float getTranslateX() {
+    return mTranslateX;
+  }
+
+  /** @return the vertical translation applied after scaling. */
+  public float getTranslateY() {
+    return mTranslateY;
+  }
+
+  /** @return the left of the rect the bitmap and border are drawn in. */
+  public float getLeft() {
+    return mLeft;
+  }
+
+  /** @return the top of the rect the bitmap and border are drawn in. */
+  public float getTop() {
+    return mTop;
+  }
+
+  /** @return the right of the rect the bitmap and border are drawn in. */
+  public float getRight() {
+    return mRight;
+  }
+
+  /** @return the bottom of the rect the bitmap and border are drawn in. */
+  public float getBottom() {
+    return mBottom;
+  }
+}
@@ -0,0 +1,47 @@
+/*
+* Copyright (C) 2017 Vincent Mi
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*      http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package com.makeramen.roundedimageview.glide;
+
+import android.graphics.Bitmap;
+import com.makeramen.roundedimageview.BitmapPool;
+
+/**
+ * Exposes Glide's pool as a {@link BitmapPool} so rounded output is taken from, and intermediates
+ * returned to, the same pool Glide decodes into.
+ */
+final class GlideBitmapPool implements BitmapPool {
+
+  private final com.bumptech.glide.load.engine.bitmap_recycle.BitmapPool mPool;
+
+  GlideBitmapPool(com.bumptech.glide.load.engine.bitmap_recycle.BitmapPool pool) {
+    mPool = pool;
+  }
+
+  @Override public Bitmap get(int width, int height, Bitmap.Config config) {
+    return mPool.get(width, height, config);
+  }
+
+  @Override public void put(Bitmap bitmap) {
+    if (!mPool.put(bitmap)) {
+      bitmap.recycle();
+    }
+  }
+
+  @Override public void clear() {
+    mPool.clearMemory();
+  }
+}
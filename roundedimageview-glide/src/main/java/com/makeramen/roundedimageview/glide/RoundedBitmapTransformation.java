@@ -0,0 +1,211 @@
+/*
+* Copyright (C) 2017 Vincent Mi
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*      http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package com.makeramen.roundedimageview.glide;
+
+import android.content.Context;
+import android.content.res.ColorStateList;
+import android.graphics.Bitmap;
+import android.util.DisplayMetrics;
+import android.util.TypedValue;
+import android.widget.ImageView;
+import com.bumptech.glide.load.engine.bitmap_recycle.BitmapPool;
+import com.bumptech.glide.load.resource.bitmap.BitmapTransformation;
+import com.makeramen.roundedimageview.Corner;
+import com.makeramen.roundedimageview.RoundedDrawable;
+import com.makeramen.roundedimageview.RoundingSpec;
+
+/**
+ * A Glide {@link BitmapTransformation} that rounds corners and draws borders like
+ * {@link com.makeramen.roundedimageview.RoundedImageView}. The output is rendered at Glide's
+ * target size into a bitmap from Glide's {@link BitmapPool}.
+ *
+ * <pre>
+ * Glide.with(context)
+ *     .load(url)
+ *     .transform(new RoundedBitmapTransformation.Builder(context)
+ *         .scaleType(ScaleType.CENTER_CROP)
+ *         .cornerRadiusDp(30)
+ *         .build())
+ *     .into(imageView);
+ * </pre>
+ */
+public final class RoundedBitmapTransformation extends BitmapTransformation {
+
+  private final RoundingSpec mSpec;
+  private final String mId;
+
+  /**
+   * @param context any context, used to get Glide's {@link BitmapPool}.
+   * @param spec the rounding to apply.
+   */
+  public RoundedBitmapTransformation(Context context, RoundingSpec spec) {
+    super(context);
+    mSpec = spec;
+    mId = RoundedBitmapTransformation.class.getName() + spec.key();
+  }
+
+  @Override
+  protected Bitmap transform(BitmapPool pool, Bitmap toTransform, int outWidth, int outHeight) {
+    if (mSpec.isNoOp()
+        && toTransform.getWidth() == outWidth && toTransform.getHeight() == outHeight) {
+      return toTransform;
+    }
+
+    Bitmap transformed = RoundedDrawable.fromBitmap(toTransform)
+        .setRoundingSpec(mSpec)
+        .toBitmap(outWidth, outHeight, new GlideBitmapPool(pool));
+    // Glide returns toTransform to its pool itself once it's replaced
+    return transformed != null ? transformed : toTransform;
+  }
+
+  public RoundingSpec getRoundingSpec() {
+    return mSpec;
+  }
+
+  @Override public String getId() {
+    return mId;
+  }
+
+  public static final class Builder {
+
+    private final Context mContext;
+    private final DisplayMetrics mDisplayMetrics;
+
+    private final RoundingSpec.Builder mSpec = new RoundingSpec.Builder();
+
+    public Builder(Context context) {
+      mContext = context.getApplicationContext();
+      mDisplayMetrics = context.getResources().getDisplayMetrics();
+    }
+
+    public Builder scaleType(ImageView.ScaleType scaleType) {
+      mSpec.scaleType(scaleType);
+      return this;
+    }
+
+    /**
+     * Set corner radius for all corners in px.
+     *
+     * @param radius the radius in px
+     * @return the builder for chaining.
+     */
+    public Builder cornerRadius(float radius) {
+      mSpec.cornerRadius(radius);
+      return this;
+    }
+
+    /**
+     * Set corner radius for a specific corner in px.
+     *
+     * @param corner the corner to set.
+     * @param radius the radius in px.
+     * @return the builder for chaining.
+     */
+    public Builder cornerRadius(@Corner int corner, float radius) {
+      mSpec.cornerRadius(corner, radius);
+      return this;
+    }
+
+    /**
+     * Set corner radius for all corners in density independent pixels.
+     *
+     * @param radius the radius in density independent pixels.
+     * @return the builder for chaining.
+     */
+    public Builder cornerRadiusDp(float radius) {
+      return cornerRadius(
+          TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP, radius, mDisplayMetrics));
+    }
+
+    /**
+     * Set corner radius for a specific corner in density independent pixels.
+     *
+     * @param corner the corner to set
+     * @param radius the radius in density independent pixels.
+     * @return the builder for chaining.
+     */
+    public Builder cornerRadiusDp(@Corner int corner, float radius) {
+      return cornerRadius(corner,
+          TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP, radius, mDisplayMetrics));
+    }
+
+    /**
+     * Set the border width in pixels.
+     *
+     * @param width border width in pixels.
+     * @return the builder for chaining.
+     */
+    public Builder borderWidth(float width) {
+      mSpec.borderWidth(width);
+      return this;
+    }
+
+    /**
+     * Set the border width in density independent pixels.
+     *
+     * @param width border width in density independent pixels.
+     * @return the builder for chaining.
+     */
+    public Builder borderWidthDp(float width) {
+      mSpec.borderWidth(
+          TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP, width, mDisplayMetrics));
+      return this;
+    }
+
+    /**
+     * Set the border color.
+     *
+     * @param color the color to set.
+     * @return the builder for chaining.
+     */
+    public Builder borderColor(int color) {
+      mSpec.borderColor(color);
+      return this;
+    }
+
+    /**
+     * Set the border color as a {@link ColorStateList}.
+     *
+     * @param colors the {@link ColorStateList} to set.
+     * @return the builder for chaining.
+     */
+    public Builder borderColor(ColorStateList colors) {
+      mSpec.borderColor(colors);
+      return this;
+    }
+
+    /**
+     * Sets whether the image should be oval or not.
+     *
+     * @param oval if the image should be oval.
+     * @return the builder for chaining.
+     */
+    public Builder oval(boolean oval) {
+      mSpec.oval(oval);
+      return this;
+    }
+
+    /**
+     * Creates an immutable {@link RoundedBitmapTransformation} for use with glide.
+     *
+     * @return the {@link RoundedBitmapTransformation}
+     */
+    public RoundedBitmapTransformation build() {
+      return new RoundedBitmapTransformation(mContext, mSpec.build());
+    }
+  }
+}
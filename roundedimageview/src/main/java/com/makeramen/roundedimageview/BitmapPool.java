@@ -0,0 +1,48 @@
+/*
+* Copyright (C) 2017 Vincent Mi
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*      http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package com.makeramen.roundedimageview;
+
+import android.graphics.Bitmap;
+
+/**
+ * A source of reusable bitmaps for the conversions and rasterizations done by this library.
+ * Install one with {@link RoundedDrawable#setBitmapPool(BitmapPool)}. Implementations must be
+ * thread safe, transformations run on image loader worker threads.
+ */
+public interface BitmapPool {
+
+  /**
+   * @param width the width in px.
+   * @param height the height in px.
+   * @param config the config.
+   * @return a mutable bitmap of exactly this size and config erased to transparent, or null if
+   * none is available.
+   */
+  Bitmap get(int width, int height, Bitmap.Config config);
+
+  /**
+   * Hands a bitmap over to the pool. The caller must not use it afterwards.
+   *
+   * @param bitmap the bitmap to reuse.
+   */
+  void put(Bitmap bitmap);
+
+  /**
+   * Recycles and drops all pooled bitmaps.
+   */
+  void clear();
+}
@@ -0,0 +1,245 @@
+/*
+* Copyright (C) 2017 Vincent Mi
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*      http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package com.makeramen.roundedimageview;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.graphics.RectF;
+import android.util.Log;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * An opt-in cache of pre-rendered border rings shared by all {@link RoundedDrawable}s, see
+ * {@link RoundedDrawable#setBorderRingCache(BorderRingCache)}. Drawables with the same border
+ * geometry, width and color, like a grid of same sized avatars, draw the same cached bitmap with a
+ * single blit instead of stroking an anti-aliased path every frame. The least recently used rings
+ * are dropped once the cache exceeds its byte size.
+ *
+ * <p>Rings are keyed by the border's size in whole pixels and drawn at whole pixels, which may
+ * place them up to half a pixel off a directly stroked border. A ring is only rendered the second
+ * time its key is asked for, so bounds that change every frame, like during resize or shared
+ * element animations, keep stroking instead of filling the cache with rings used once.
+ */
+public class BorderRingCache {
+
+  private static final int MAX_PENDING = 32;
+
+  private final int mMaxBytes;
+  private final LinkedHashMap<Key, Bitmap> mEntries = new LinkedHashMap<>(16, 0.75f, true);
+  // keys that missed once, a second miss renders the ring
+  private final LinkedHashMap<Key, Boolean> mPending =
+      new LinkedHashMap<Key, Boolean>(16, 0.75f, true) {
+        @Override protected boolean removeEldestEntry(Map.Entry<Key, Boolean> eldest) {
+          return size() > MAX_PENDING;
+        }
+      };
+  private int mBytes;
+  private int mHitCount;
+  private int mMissCount;
+
+  /**
+   * @param maxBytes the maximum number of bytes of rings to keep. Rings larger than a quarter of
+   *     this are not cached and are stroked directly instead.
+   */
+  public BorderRingCache(int maxBytes) {
+    mMaxBytes = maxBytes;
+  }
+
+  /**
+   * @return the x coordinate to draw the ring for a border around {@code rect} at.
+   */
+  static float ringLeft(RectF rect, float borderWidth) {
+    return Math.round(rect.left - borderWidth / 2);
+  }
+
+  /**
+   * @return the y coordinate to draw the ring for a border around {@code rect} at.
+   */
+  static float ringTop(RectF rect, float borderWidth) {
+    return Math.round(rect.top - borderWidth / 2);
+  }
+
+  /**
+   * Returns the ring for a border stroked centered on the edge of {@code rect}, to be drawn at
+   * {@link #ringLeft} and {@link #ringTop}, rendering it on a miss.
+   *
+   * @return the ring, or null if it should be stroked directly: it was not asked for before, is
+   * too large to cache or could not be rendered.
+   */
+  Bitmap get(RectF rect, float[] radii, boolean oval, float borderWidth, int color) {
+    final int rectWidth = Math.round(rect.width());
+    final int rectHeight = Math.round(rect.height());
+    final int width = (int) Math.ceil(rectWidth + borderWidth);
+    final int height = (int) Math.ceil(rectHeight + borderWidth);
+    if (rectWidth <= 0 || rectHeight <= 0 || (long) width * height * 4 > mMaxBytes / 4) {
+      return null;
+    }
+
+    final Key key = new Key(rectWidth, rectHeight, oval ? null : radii, borderWidth, color);
+    synchronized (this) {
+      Bitmap cached = mEntries.get(key);
+      if (cached != null) {
+        mHitCount++;
+        return cached;
+      }
+      mMissCount++;
+      if (mPending.put(key, Boolean.TRUE) == null) {
+        return null;
+      }
+      mPending.remove(key);
+    }
+
+    final RectF local = new RectF(borderWidth / 2, borderWidth / 2,
+        borderWidth / 2 + rectWidth, borderWidth / 2 + rectHeight);
+
+    // render outside the lock, a concurrent miss for the same key just renders twice
+    Bitmap ring = render(local, radii, oval, borderWidth, color, width, height);
+    if (ring == null) {
+      return null;
+    }
+
+    synchronized (this) {
+      Bitmap previous = mEntries.put(key, ring);
+      if (previous != null) {
+        mBytes -= LruBitmapPool.byteCount(previous);
+      }
+      mBytes += LruBitmapPool.byteCount(ring);
+      trimToSize(mMaxBytes);
+    }
+    return ring;
+  }
+
+  private static Bitmap render(RectF rect, float[] radii, boolean oval, float borderWidth,
+      int color, int width, int height) {
+    Bitmap ring;
+    try {
+      ring = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+    } catch (OutOfMemoryError e) {
+      Log.w(RoundedDrawable.TAG, "Failed to render border ring!");
+      return null;
+    }
+
+    Paint paint = new Paint();
+    paint.setStyle(Paint.Style.STROKE);
+    paint.setAntiAlias(true);
+    paint.setColor(color);
+    paint.setStrokeWidth(borderWidth);
+
+    Canvas canvas = new Canvas(ring);
+    if (oval) {
+      canvas.drawOval(rect, paint);
+    } else if (radii[0] == radii[1] && radii[0] == radii[2] && radii[0] == radii[3]) {
+      if (radii[0] > 0) {
+        canvas.drawRoundRect(rect, radii[0], radii[0], paint);
+      } else {
+        canvas.drawRect(rect, paint);
+      }
+    } else {
+      float[] pathRadii = new float[8];
+      for (int i = 0; i < radii.length; i++) {
+        pathRadii[i * 2] = radii[i];
+        pathRadii[i * 2 + 1] = radii[i];
+      }
+      Path path = new Path();
+      path.addRoundRect(rect, pathRadii, Path.Direction.CW);
+      canvas.drawPath(path, paint);
+    }
+    return ring;
+  }
+
+  /**
+   * Drops all cached rings. They are not recycled since drawables may still draw them.
+   */
+  public synchronized void evictAll() {
+    trimToSize(-1);
+    mPending.clear();
+  }
+
+  /**
+   * @return the number of bytes of cached rings.
+   */
+  public synchronized int size() {
+    return mBytes;
+  }
+
+  public int maxSize() {
+    return mMaxBytes;
+  }
+
+  public synchronized int hitCount() {
+    return mHitCount;
+  }
+
+  public synchronized int missCount() {
+    return mMissCount;
+  }
+
+  private void trimToSize(int maxBytes) {
+    Iterator<Map.Entry<Key, Bitmap>> it = mEntries.entrySet().iterator();
+    while (mBytes > maxBytes && it.hasNext()) {
+      Bitmap eldest = it.next().getValue();
+      it.remove();
+      mBytes -= LruBitmapPool.byteCount(eldest);
+    }
+  }
+
+  private static final class Key {
+    private final int mWidth;
+    private final int mHeight;
+    // null for ovals
+    private final float[] mRadii;
+    private final float mBorderWidth;
+    private final int mColor;
+    private final int mHashCode;
+
+    Key(int width, int height, float[] radii, float borderWidth, int color) {
+      mWidth = width;
+      mHeight = height;
+      mRadii = radii != null ? radii.clone() : null;
+      mBorderWidth = borderWidth;
+      mColor = color;
+
+      int result = mWidth;
+      result = 31 * result + mHeight;
+      result = 31 * result + Arrays.hashCode(mRadii);
+      result = 31 * result + Float.floatToIntBits(mBorderWidth);
+      result = 31 * result + mColor;
+      mHashCode = result;
+    }
+
+    @Override public boolean equals(Object o) {
+      if (this == o) { return true; }
+      if (!(o instanceof Key)) { return false; }
+      Key other = (Key) o;
+      return mHashCode == other.mHashCode
+          && mWidth == other.mWidth
+          && mHeight == other.mHeight
+          && mBorderWidth == other.mBorderWidth
+          && mColor == other.mColor
+          && Arrays.equals(mRadii, other.mRadii);
+    }
+
+    @Override public int hashCode() {
+      return mHashCode;
+    }
+  }
+}
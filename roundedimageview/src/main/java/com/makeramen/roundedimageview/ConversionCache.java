@@ -0,0 +1,148 @@
+/*
+* Copyright (C) 2017 Vincent Mi
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*      http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+
+package com.makeramen.roundedimageview;
+
+import android.graphics.Bitmap;
+import android.graphics.drawable.Animatable;
+import android.graphics.drawable.Drawable;
+import android.graphics.drawable.Drawable.ConstantState;
+import android.os.Build;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.WeakHashMap;
+
+/**
+ * An opt-in cache of the bitmaps non-bitmap drawables are rasterized into when they are rounded,
+ * see {@link RoundedDrawable#setConversionCache(ConversionCache)}. Drawables loaded from the same
+ * resource in the same configuration share a {@link ConstantState}, so a vector or shape set on
+ * hundreds of list rows is rasterized once and every row draws the same bitmap.
+ *
+ * <p>Entries are held weakly by their {@link ConstantState} and go away once no drawable from
+ * that resource is alive anymore, the cache needs no size limit. Stateful and animated drawables,
+ * whose pixels depend on more than their constant state, are never cached.
+ *
+ * <p>A tint or color filter changes the pixels without changing the constant state, and a tint
+ * can't be read back before API 29. So only drawables {@link RoundedImageView} loads from
+ * resources itself, from {@code android:src}, {@link RoundedImageView#setImageResource(int)} or
+ * {@link RoundedImageView#setBackgroundResource(int)}, go through the cache. Drawables passed to
+ * {@code setImageDrawable()} or {@link RoundedDrawable#fromDrawable(Drawable)} may have been
+ * tinted by the caller and are always rasterized on their own.
+ */
+public class ConversionCache {
+
+  private final WeakHashMap<ConstantState, List<Entry>> mEntries = new WeakHashMap<>();
+  private int mHitCount;
+  private int mMissCount;
+
+  /**
+   * Returns the rasterized {@code drawable}, rendering it on a miss. The result is shared and must
+   * never be recycled or returned to a {@link BitmapPool}.
+   *
+   * @return the bitmap, or null if it could not be rendered.
+   */
+  Bitmap get(Drawable drawable) {
+    final ConstantState state = drawable.getConstantState();
+    if (state == null || drawable.isStateful() || drawable instanceof Animatable
+        || Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP
+        && drawable.getColorFilter() != null) {
+      return RoundedDrawable.drawableToBitmap(drawable);
+    }
+
+    final int width = drawable.getIntrinsicWidth();
+    final int height = drawable.getIntrinsicHeight();
+    final int level = drawable.getLevel();
+    synchronized (this) {
+      Bitmap cached = find(mEntries.get(state), width, height, level);
+      if (cached != null) {
+        mHitCount++;
+        return cached;
+      }
+      mMissCount++;
+    }
+
+    // render outside the lock, a concurrent miss for the same drawable just renders twice
+    Bitmap bitmap = RoundedDrawable.drawableToBitmap(drawable);
+    if (bitmap == null) {
+      return null;
+    }
+
+    synchronized (this) {
+      List<Entry> entries = mEntries.get(state);
+      if (entries == null) {
+        entries = new ArrayList<>(1);
+        mEntries.put(state, entries);
+      }
+      Bitmap cached = find(entries, width, height, level);
+      if (cached != null) {
+        // lost the race, drop ours so every drawable shares the same copy
+        RoundedDrawable.releaseBitmap(bitmap);
+        return cached;
+      }
+      entries.add(new Entry(width, height, level, bitmap));
+    }
+    return bitmap;
+  }
+
+  private static Bitmap find(List<Entry> entries, int width, int height, int level) {
+    if (entries != null) {
+      for (int i = 0; i < entries.size(); i++) {
+        Entry entry = entries.get(i);
+        if (entry.mWidth == width && entry.mHeight == height && entry.mLevel == level) {
+          return entry.mBitmap;
+        }
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Drops all cached bitmaps. They are not recycled since drawables may still draw them.
+   */
+  public synchronized void evictAll() {
+    mEntries.clear();
+  }
+
+  /**
+   * @return the number of drawables with cached bitmaps that are still alive.
+   */
+  public synchronized int size() {
+    return mEntries.size();
+  }
+
+  public synchronized int hitCount() {
+    return mHitCount;
+  }
+
+  public synchronized int missCount() {
+    return mMissCount;
+  }
+
+  private static final class Entry {
+    final int mWidth;
+    final int mHeight;
+    final int mLevel;
+    final Bitmap mBitmap;
+
+    Entry(int width, int height, int level, Bitmap bitmap) {
+      mWidth = width;
+      mHeight = height;
+      mLevel = level;
+      mBitmap = bitmap;
+    }
+  }
+}
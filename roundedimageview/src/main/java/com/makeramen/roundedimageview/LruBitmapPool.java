@@ -0,0 +1,148 @@
+/*
+* Copyright (C) 2017 Vincent Mi
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*      http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package com.makeramen.roundedimageview;
+
+import android.graphics.Bitmap;
+import android.graphics.Color;
+import android.os.Build;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A {@link BitmapPool} bounded by the total byte size of the bitmaps it holds. Bitmaps are
+ * matched by exact width, height and config, and the least recently returned ones are recycled
+ * first when the pool is full.
+ */
+public class LruBitmapPool implements BitmapPool {
+
+  private final int mMaxBytes;
+  private final Map<Key, ArrayList<Bitmap>> mGroups = new HashMap<>();
+  // insertion ordered, the eldest entry is the least recently returned bitmap
+  private final LinkedHashMap<Bitmap, Key> mLru = new LinkedHashMap<>();
+  private final Key mLookupKey = new Key();
+  private int mBytes;
+
+  /**
+   * @param maxBytes the maximum number of bytes of bitmaps to keep around.
+   */
+  public LruBitmapPool(int maxBytes) {
+    mMaxBytes = maxBytes;
+  }
+
+  @Override public synchronized Bitmap get(int width, int height, Bitmap.Config config) {
+    ArrayList<Bitmap> group = mGroups.get(mLookupKey.set(width, height, config));
+    if (group == null || group.isEmpty()) {
+      return null;
+    }
+
+    Bitmap bitmap = group.remove(group.size() - 1);
+    mLru.remove(bitmap);
+    mBytes -= byteCount(bitmap);
+    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB_MR1) {
+      // may have been marked opaque by its previous user
+      bitmap.setHasAlpha(true);
+    }
+    bitmap.eraseColor(Color.TRANSPARENT);
+    return bitmap;
+  }
+
+  @Override public synchronized void put(Bitmap bitmap) {
+    if (bitmap == null || bitmap.isRecycled()) {
+      return;
+    }
+    if (mLru.containsKey(bitmap)) {
+      return;
+    }
+    int bytes = byteCount(bitmap);
+    if (!bitmap.isMutable() || bytes > mMaxBytes) {
+      bitmap.recycle();
+      return;
+    }
+
+    Key key = new Key().set(bitmap.getWidth(), bitmap.getHeight(), bitmap.getConfig());
+    ArrayList<Bitmap> group = mGroups.get(key);
+    if (group == null) {
+      group = new ArrayList<>();
+      mGroups.put(key, group);
+    }
+    group.add(bitmap);
+    mLru.put(bitmap, key);
+    mBytes += bytes;
+
+    trimToSize(mMaxBytes);
+  }
+
+  @Override public synchronized void clear() {
+    trimToSize(0);
+  }
+
+  /**
+   * @return the number of bytes held by the pool.
+   */
+  public synchronized int size() {
+    return mBytes;
+  }
+
+  public int maxSize() {
+    return mMaxBytes;
+  }
+
+  private void trimToSize(int maxBytes) {
+    Iterator<Map.Entry<Bitmap, Key>> it = mLru.entrySet().iterator();
+    while (mBytes > maxBytes && it.hasNext()) {
+      Map.Entry<Bitmap, Key> eldest = it.next();
+      Bitmap bitmap = eldest.getKey();
+      it.remove();
+      mGroups.get(eldest.getValue()).remove(bitmap);
+      mBytes -= byteCount(bitmap);
+      bitmap.recycle();
+    }
+  }
+
+  static int byteCount(Bitmap bitmap) {
+    return bitmap.getRowBytes() * bitmap.getHeight();
+  }
+
+  private static final class Key {
+    int mWidth;
+    int mHeight;
+    Bitmap.Config mConfig;
+
+    Key set(int width, int height, Bitmap.Config config) {
+      mWidth = width;
+      mHeight = height;
+      mConfig = config;
+      return this;
+    }
+
+    @Override public boolean equals(Object o) {
+      if (!(o instanceof Key)) { return false; }
+      Key other = (Key) o;
+      return mWidth == other.mWidth && mHeight == other.mHeight && mConfig == other.mConfig;
+    }
+
+    @Override public int hashCode() {
+      int result = mWidth;
+      result = 31 * result + mHeight;
+      result = 31 * result + (mConfig != null ? mConfig.hashCode() : 0);
+      return result;
+    }
+  }
+}
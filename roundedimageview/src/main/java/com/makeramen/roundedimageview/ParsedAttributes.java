@@ -0,0 +1,291 @@
+/*
+* Copyright (C) 2017 Vincent Mi
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*      http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+
+package com.makeramen.roundedimageview;
+
+import android.content.Context;
+import android.content.res.ColorStateList;
+import android.content.res.Configuration;
+import android.content.res.Resources;
+import android.content.res.TypedArray;
+import android.graphics.Shader;
+import android.util.AttributeSet;
+import android.widget.ImageView.ScaleType;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.WeakHashMap;
+
+/**
+ * The {@link RoundedImageView} XML attributes of one layout element, parsed once and shared by
+ * every view inflated from it. The rounding settings are an interned {@link RoundingSpec}, so a
+ * screen of identical avatars resolves its styled attributes once instead of once per view.
+ *
+ * <p>Entries are cached per theme and keyed by the raw attribute values, the style attribute and
+ * the default style, and are dropped when the configuration changes. Attribute sets without
+ * resource ids for their names, like in layout previews, are always parsed.
+ */
+final class ParsedAttributes {
+
+  // Constants for tile mode attributes
+  private static final int TILE_MODE_UNDEFINED = -2;
+  private static final int TILE_MODE_CLAMP = 0;
+  private static final int TILE_MODE_REPEAT = 1;
+  private static final int TILE_MODE_MIRROR = 2;
+
+  private static final ScaleType[] SCALE_TYPES = {
+      ScaleType.MATRIX,
+      ScaleType.FIT_XY,
+      ScaleType.FIT_START,
+      ScaleType.FIT_CENTER,
+      ScaleType.FIT_END,
+      ScaleType.CENTER,
+      ScaleType.CENTER_CROP,
+      ScaleType.CENTER_INSIDE
+  };
+
+  /** The attribute ids of {@code R.styleable.RoundedImageView}, sorted for binary search. */
+  private static final int[] ROUNDED_ATTRS = sortedCopy(R.styleable.RoundedImageView);
+
+  private static final WeakHashMap<Resources.Theme, ThemeEntries> sCache = new WeakHashMap<>();
+
+  final RoundingSpec mSpec;
+  final boolean mMutateBackground;
+  final boolean mClipToOutline;
+  final boolean mDownsample;
+  final boolean mAsyncDecode;
+  final boolean mReleaseOnDetach;
+  final boolean mFixedSize;
+  final boolean mDelegateDrawables;
+
+  private ParsedAttributes(TypedArray a) {
+    RoundingSpec.Builder spec = new RoundingSpec.Builder();
+
+    int index = a.getInt(R.styleable.RoundedImageView_android_scaleType, -1);
+    // default scaletype to FIT_CENTER
+    spec.scaleType(index >= 0 ? SCALE_TYPES[index] : ScaleType.FIT_CENTER);
+
+    float cornerRadiusOverride =
+        a.getDimensionPixelSize(R.styleable.RoundedImageView_riv_corner_radius, -1);
+
+    float[] radii = new float[] {
+        a.getDimensionPixelSize(R.styleable.RoundedImageView_riv_corner_radius_top_left, -1),
+        a.getDimensionPixelSize(R.styleable.RoundedImageView_riv_corner_radius_top_right, -1),
+        a.getDimensionPixelSize(R.styleable.RoundedImageView_riv_corner_radius_bottom_right, -1),
+        a.getDimensionPixelSize(R.styleable.RoundedImageView_riv_corner_radius_bottom_left, -1)
+    };
+
+    boolean any = false;
+    for (int i = 0, len = radii.length; i < len; i++) {
+      if (radii[i] < 0) {
+        radii[i] = 0f;
+      } else {
+        any = true;
+      }
+    }
+
+    if (!any) {
+      if (cornerRadiusOverride < 0) {
+        cornerRadiusOverride = RoundedImageView.DEFAULT_RADIUS;
+      }
+      for (int i = 0, len = radii.length; i < len; i++) {
+        radii[i] = cornerRadiusOverride;
+      }
+    }
+    spec.cornerRadius(radii[Corner.TOP_LEFT], radii[Corner.TOP_RIGHT],
+        radii[Corner.BOTTOM_RIGHT], radii[Corner.BOTTOM_LEFT]);
+
+    float borderWidth = a.getDimensionPixelSize(R.styleable.RoundedImageView_riv_border_width, -1);
+    spec.borderWidth(borderWidth >= 0 ? borderWidth : RoundedImageView.DEFAULT_BORDER_WIDTH);
+
+    ColorStateList borderColor = a.getColorStateList(R.styleable.RoundedImageView_riv_border_color);
+    spec.borderColor(borderColor != null
+        ? borderColor : ColorStateList.valueOf(RoundedDrawable.DEFAULT_BORDER_COLOR));
+
+    spec.oval(a.getBoolean(R.styleable.RoundedImageView_riv_oval, false));
+
+    Shader.TileMode tileModeX = RoundedImageView.DEFAULT_TILE_MODE;
+    Shader.TileMode tileModeY = RoundedImageView.DEFAULT_TILE_MODE;
+    final int tileMode = a.getInt(R.styleable.RoundedImageView_riv_tile_mode, TILE_MODE_UNDEFINED);
+    if (tileMode != TILE_MODE_UNDEFINED) {
+      tileModeX = parseTileMode(tileMode);
+      tileModeY = parseTileMode(tileMode);
+    }
+    final int x = a.getInt(R.styleable.RoundedImageView_riv_tile_mode_x, TILE_MODE_UNDEFINED);
+    if (x != TILE_MODE_UNDEFINED) {
+      tileModeX = parseTileMode(x);
+    }
+    final int y = a.getInt(R.styleable.RoundedImageView_riv_tile_mode_y, TILE_MODE_UNDEFINED);
+    if (y != TILE_MODE_UNDEFINED) {
+      tileModeY = parseTileMode(y);
+    }
+    spec.tileModeX(tileModeX).tileModeY(tileModeY);
+
+    mSpec = spec.build();
+    mMutateBackground = a.getBoolean(R.styleable.RoundedImageView_riv_mutate_background, false);
+    mClipToOutline = a.getBoolean(R.styleable.RoundedImageView_riv_clip_to_outline, false);
+    mDownsample = a.getBoolean(R.styleable.RoundedImageView_riv_downsample, false);
+    mAsyncDecode = a.getBoolean(R.styleable.RoundedImageView_riv_async_decode, false);
+    mReleaseOnDetach = a.getBoolean(R.styleable.RoundedImageView_riv_release_on_detach, false);
+    mFixedSize = a.getBoolean(R.styleable.RoundedImageView_riv_fixed_size, false);
+    mDelegateDrawables = a.getBoolean(R.styleable.RoundedImageView_riv_delegate_drawables, false);
+  }
+
+  private static Shader.TileMode parseTileMode(int tileMode) {
+    switch (tileMode) {
+      case TILE_MODE_CLAMP:
+        return Shader.TileMode.CLAMP;
+      case TILE_MODE_REPEAT:
+        return Shader.TileMode.REPEAT;
+      case TILE_MODE_MIRROR:
+        return Shader.TileMode.MIRROR;
+      default:
+        return null;
+    }
+  }
+
+  /**
+   * @return the parsed attributes for a view inflated with {@code attrs} and {@code defStyle},
+   * from the cache when an identical element was inflated with the same theme and configuration.
+   */
+  static ParsedAttributes obtain(Context context, AttributeSet attrs, int defStyle) {
+    final Key key = Key.of(attrs, defStyle);
+    if (key == null) {
+      return parse(context, attrs, defStyle);
+    }
+
+    final Resources.Theme theme = context.getTheme();
+    final Configuration config = context.getResources().getConfiguration();
+    synchronized (sCache) {
+      ThemeEntries entries = sCache.get(theme);
+      if (entries != null && entries.mConfiguration.equals(config)) {
+        ParsedAttributes cached = entries.mParsed.get(key);
+        if (cached != null) {
+          return cached;
+        }
+      }
+    }
+
+    ParsedAttributes parsed = parse(context, attrs, defStyle);
+    synchronized (sCache) {
+      ThemeEntries entries = sCache.get(theme);
+      if (entries == null || !entries.mConfiguration.equals(config)) {
+        entries = new ThemeEntries(new Configuration(config));
+        sCache.put(theme, entries);
+      }
+      entries.mParsed.put(key, parsed);
+    }
+    return parsed;
+  }
+
+  private static ParsedAttributes parse(Context context, AttributeSet attrs, int defStyle) {
+    TypedArray a = context.obtainStyledAttributes(attrs, R.styleable.RoundedImageView, defStyle, 0);
+    try {
+      return new ParsedAttributes(a);
+    } finally {
+      a.recycle();
+    }
+  }
+
+  private static int[] sortedCopy(int[] attrs) {
+    int[] sorted = attrs.clone();
+    Arrays.sort(sorted);
+    return sorted;
+  }
+
+  /**
+   * Identifies everything the attributes resolve from besides the theme: the default style, the
+   * style attribute and the raw values of the attributes {@link RoundedImageView} reads.
+   */
+  private static final class Key {
+    private final int mDefStyle;
+    private final int mStyle;
+    private final int[] mNames;
+    private final String[] mValues;
+    private final int mHashCode;
+
+    private Key(int defStyle, int style, int[] names, String[] values) {
+      mDefStyle = defStyle;
+      mStyle = style;
+      mNames = names;
+      mValues = values;
+      int hash = 31 * defStyle + style;
+      hash = 31 * hash + Arrays.hashCode(names);
+      mHashCode = 31 * hash + Arrays.hashCode(values);
+    }
+
+    /**
+     * @return the key for {@code attrs}, or null if the attribute set can't be keyed reliably.
+     */
+    static Key of(AttributeSet attrs, int defStyle) {
+      if (attrs == null) {
+        return new Key(defStyle, 0, new int[0], new String[0]);
+      }
+      final int count = attrs.getAttributeCount();
+      int[] names = new int[count];
+      String[] values = new String[count];
+      int size = 0;
+      for (int i = 0; i < count; i++) {
+        int name = attrs.getAttributeNameResource(i);
+        if (name == 0) {
+          return null;
+        }
+        if (Arrays.binarySearch(ROUNDED_ATTRS, name) >= 0) {
+          names[size] = name;
+          values[size] = attrs.getAttributeValue(i);
+          size++;
+        }
+      }
+      if (size < count) {
+        // Arrays.copyOf needs API 9
+        int[] trimmedNames = new int[size];
+        String[] trimmedValues = new String[size];
+        System.arraycopy(names, 0, trimmedNames, 0, size);
+        System.arraycopy(values, 0, trimmedValues, 0, size);
+        names = trimmedNames;
+        values = trimmedValues;
+      }
+      return new Key(defStyle, attrs.getStyleAttribute(), names, values);
+    }
+
+    @Override public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof Key)) {
+        return false;
+      }
+      Key other = (Key) o;
+      return mDefStyle == other.mDefStyle
+          && mStyle == other.mStyle
+          && Arrays.equals(mNames, other.mNames)
+          && Arrays.equals(mValues, other.mValues);
+    }
+
+    @Override public int hashCode() {
+      return mHashCode;
+    }
+  }
+
+  private static final class ThemeEntries {
+    final Configuration mConfiguration;
+    final HashMap<Key, ParsedAttributes> mParsed = new HashMap<>();
+
+    ThemeEntries(Configuration configuration) {
+      mConfiguration = configuration;
+    }
+  }
+}
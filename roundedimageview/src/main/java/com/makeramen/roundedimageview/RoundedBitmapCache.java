@@ -0,0 +1,169 @@
+/*
+* Copyright (C) 2017 Vincent Mi
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*      http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package com.makeramen.roundedimageview;
+
+import android.graphics.Bitmap;
+import android.os.Build;
+import java.lang.ref.WeakReference;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * An opt-in memory cache of rendered rounded bitmaps, for software rendered surfaces like
+ * notifications, app widgets or exported images that ask for the same rounded output over and
+ * over. Entries are keyed by the identity and generation of the source bitmap, the
+ * {@link RoundingSpec} and the output size, and the least recently used ones are dropped once the
+ * cache exceeds its byte size.
+ *
+ * <p>Bitmaps returned by this cache are shared, callers must not modify or recycle them.
+ */
+public class RoundedBitmapCache {
+
+  private final int mMaxBytes;
+  private final LinkedHashMap<Key, Bitmap> mEntries = new LinkedHashMap<>(16, 0.75f, true);
+  private int mBytes;
+  private int mHitCount;
+  private int mMissCount;
+
+  /**
+   * @param maxBytes the maximum number of bytes of rendered bitmaps to keep.
+   */
+  public RoundedBitmapCache(int maxBytes) {
+    mMaxBytes = maxBytes;
+  }
+
+  /**
+   * Returns the rounded rendering of {@code source}, rendering and caching it on a miss.
+   *
+   * @param source the source bitmap.
+   * @param spec the rounding to apply.
+   * @param width the output width in px.
+   * @param height the output height in px.
+   * @return the rendered bitmap, or null if it could not be rendered.
+   */
+  public Bitmap get(Bitmap source, RoundingSpec spec, int width, int height) {
+    Key key = new Key(source, spec, width, height);
+    synchronized (this) {
+      Bitmap cached = mEntries.get(key);
+      if (cached != null && !cached.isRecycled()) {
+        mHitCount++;
+        return cached;
+      }
+      mMissCount++;
+    }
+
+    // render outside the lock, a concurrent miss for the same key just renders twice
+    Bitmap rendered = RoundedDrawable.fromBitmap(source)
+        .setRoundingSpec(spec)
+        .toBitmap(width, height);
+    if (rendered == null) {
+      return null;
+    }
+
+    synchronized (this) {
+      Bitmap previous = mEntries.put(key, rendered);
+      if (previous != null) {
+        mBytes -= LruBitmapPool.byteCount(previous);
+      }
+      mBytes += LruBitmapPool.byteCount(rendered);
+      trimToSize(mMaxBytes);
+    }
+    return rendered;
+  }
+
+  /**
+   * Drops all cached bitmaps. They are not recycled since callers may still display them.
+   */
+  public synchronized void evictAll() {
+    trimToSize(-1);
+  }
+
+  /**
+   * @return the number of bytes of cached bitmaps.
+   */
+  public synchronized int size() {
+    return mBytes;
+  }
+
+  public int maxSize() {
+    return mMaxBytes;
+  }
+
+  public synchronized int hitCount() {
+    return mHitCount;
+  }
+
+  public synchronized int missCount() {
+    return mMissCount;
+  }
+
+  private void trimToSize(int maxBytes) {
+    Iterator<Map.Entry<Key, Bitmap>> it = mEntries.entrySet().iterator();
+    while (mBytes > maxBytes && it.hasNext()) {
+      Bitmap eldest = it.next().getValue();
+      it.remove();
+      mBytes -= LruBitmapPool.byteCount(eldest);
+    }
+  }
+
+  private static final class Key {
+    // weak so cached entries don't keep their sources alive
+    private final WeakReference<Bitmap> mSource;
+    private final int mSourceIdentity;
+    private final int mGeneration;
+    private final RoundingSpec mSpec;
+    private final int mWidth;
+    private final int mHeight;
+    private final int mHashCode;
+
+    Key(Bitmap source, RoundingSpec spec, int width, int height) {
+      mSource = new WeakReference<>(source);
+      mSourceIdentity = System.identityHashCode(source);
+      mGeneration = Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB_MR1
+          ? source.getGenerationId() : 0;
+      mSpec = spec;
+      mWidth = width;
+      mHeight = height;
+
+      int result = mSourceIdentity;
+      result = 31 * result + mGeneration;
+      result = 31 * result + spec.hashCode();
+      result = 31 * result + width;
+      result = 31 * result + height;
+      mHashCode = result;
+    }
+
+    @Override public boolean equals(Object o) {
+      if (this == o) { return true; }
+      if (!(o instanceof Key)) { return false; }
+
+      Key other = (Key) o;
+      Bitmap source = mSource.get();
+      return mHashCode == other.mHashCode
+          && source != null && source == other.mSource.get()
+          && mGeneration == other.mGeneration
+          && mSpec.equals(other.mSpec)
+          && mWidth == other.mWidth
+          && mHeight == other.mHeight;
+    }
+
+    @Override public int hashCode() {
+      return mHashCode;
+    }
+  }
+}
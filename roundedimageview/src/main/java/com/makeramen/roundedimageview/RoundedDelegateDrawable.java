@@ -0,0 +1,468 @@
+/*
+* Copyright (C) 2017 Vincent Mi
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*      http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package com.makeramen.roundedimageview;
+
+import android.content.res.ColorStateList;
+import android.content.res.Resources;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.ColorFilter;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.graphics.PixelFormat;
+import android.graphics.PorterDuff;
+import android.graphics.PorterDuffXfermode;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.graphics.drawable.Animatable;
+import android.graphics.drawable.Drawable;
+import android.support.annotation.ColorInt;
+import android.support.annotation.NonNull;
+import android.widget.ImageView.ScaleType;
+import com.makeramen.roundedimageview.core.Radii;
+import com.makeramen.roundedimageview.core.ShaderGeometry;
+
+/**
+ * Rounds another drawable at draw time instead of rasterizing it into a bitmap: the wrapped
+ * drawable draws into a layer whose pixels outside the rounded or oval shape are then cleared.
+ * Vectors and gradients stay resolution independent, no pixels are copied, and invalidation,
+ * scheduling, state, level, visibility and {@link Animatable} calls are forwarded so animations
+ * keep running.
+ *
+ * <p>Tile modes don't apply to arbitrary drawables and are not supported.
+ */
+public class RoundedDelegateDrawable extends Drawable implements Drawable.Callback, Animatable {
+
+  private final Drawable mDelegate;
+  private final RectF mBounds = new RectF();
+  private final RectF mDrawableRect = new RectF();
+  private final Rect mDelegateBounds = new Rect();
+  private final ShaderGeometry mGeometry = new ShaderGeometry();
+  private final Paint mMaskPaint;
+  private final Paint mBorderPaint;
+  private final Path mPath = new Path();
+  // the inverse of the shape, everything outside it in the layer is cleared
+  private final Path mMaskPath = new Path();
+  // [ topLeftX, topLeftY, topRightX, topRightY, bottomRightX, ... ] as expected by Path
+  private final float[] mPathRadii = new float[8];
+  private final float[] mCornerRadii = new float[4];
+
+  private boolean mOval = false;
+  private float mBorderWidth = 0;
+  private ColorStateList mBorderColor =
+      ColorStateList.valueOf(RoundedDrawable.DEFAULT_BORDER_COLOR);
+  private ScaleType mScaleType = ScaleType.FIT_CENTER;
+  private int mAlpha = 255;
+  private boolean mRebuildPath = true;
+
+  public RoundedDelegateDrawable(@NonNull Drawable delegate) {
+    mDelegate = delegate;
+    mDelegate.setCallback(this);
+
+    mMaskPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    mMaskPaint.setColor(Color.BLACK);
+    mMaskPaint.setXfermode(new PorterDuffXfermode(PorterDuff.Mode.DST_OUT));
+
+    mBorderPaint = new Paint();
+    mBorderPaint.setStyle(Paint.Style.STROKE);
+    mBorderPaint.setAntiAlias(true);
+    mBorderPaint.setColor(mBorderColor.getDefaultColor());
+    mBorderPaint.setStrokeWidth(mBorderWidth);
+  }
+
+  /**
+   * @return the wrapped drawable.
+   */
+  public Drawable getDelegate() {
+    return mDelegate;
+  }
+
+  @Override
+  protected void onBoundsChange(Rect bounds) {
+    super.onBoundsChange(bounds);
+    mBounds.set(bounds);
+    updateGeometry();
+  }
+
+  private void updateGeometry() {
+    // drawables without an intrinsic size, like colors and most gradients, fill the bounds
+    int width = mDelegate.getIntrinsicWidth();
+    int height = mDelegate.getIntrinsicHeight();
+    if (width <= 0 || height <= 0) {
+      width = Math.max(1, (int) mBounds.width());
+      height = Math.max(1, (int) mBounds.height());
+    }
+
+    final ShaderGeometry geometry = mGeometry.compute(RoundedDrawable.toScaleMode(mScaleType),
+        width, height, mBounds.left, mBounds.top, mBounds.right, mBounds.bottom, mBorderWidth);
+    mDrawableRect.set(geometry.getLeft(), geometry.getTop(), geometry.getRight(),
+        geometry.getBottom());
+
+    // size the delegate instead of scaling the canvas so vectors render at full resolution
+    final float left = geometry.getTranslateX();
+    final float top = geometry.getTranslateY();
+    mDelegateBounds.set(Math.round(left), Math.round(top),
+        Math.round(left + width * geometry.getScaleX()),
+        Math.round(top + height * geometry.getScaleY()));
+    mDelegate.setBounds(mDelegateBounds);
+    mRebuildPath = true;
+  }
+
+  @Override
+  public void draw(@NonNull Canvas canvas) {
+    if (mOval || Radii.max(mCornerRadii) > 0) {
+      int saveCount = canvas.saveLayer(mDrawableRect, null, Canvas.ALL_SAVE_FLAG);
+      mDelegate.draw(canvas);
+      // a transfer mode only affects the pixels a shape covers, so cover the outside of it
+      canvas.drawPath(getMaskPath(), mMaskPaint);
+      canvas.restoreToCount(saveCount);
+    } else {
+      int saveCount = canvas.save();
+      canvas.clipRect(mDrawableRect);
+      mDelegate.draw(canvas);
+      canvas.restoreToCount(saveCount);
+    }
+
+    if (mBorderWidth > 0) {
+      drawShape(canvas, mBorderPaint);
+    }
+  }
+
+  private void drawShape(Canvas canvas, Paint paint) {
+    if (mOval) {
+      canvas.drawOval(mDrawableRect, paint);
+    } else if (Radii.isUniform(mCornerRadii)) {
+      float radius = mCornerRadii[0];
+      canvas.drawRoundRect(mDrawableRect, radius, radius, paint);
+    } else {
+      rebuildPaths();
+      canvas.drawPath(mPath, paint);
+    }
+  }
+
+  private Path getMaskPath() {
+    rebuildPaths();
+    return mMaskPath;
+  }
+
+  private void rebuildPaths() {
+    if (!mRebuildPath) {
+      return;
+    }
+    for (int i = 0; i < mCornerRadii.length; i++) {
+      mPathRadii[i * 2] = mCornerRadii[i];
+      mPathRadii[i * 2 + 1] = mCornerRadii[i];
+    }
+    mPath.rewind();
+    mPath.addRoundRect(mDrawableRect, mPathRadii, Path.Direction.CW);
+
+    mMaskPath.rewind();
+    if (mOval) {
+      mMaskPath.addOval(mDrawableRect, Path.Direction.CW);
+    } else {
+      mMaskPath.addRoundRect(mDrawableRect, mPathRadii, Path.Direction.CW);
+    }
+    mMaskPath.setFillType(Path.FillType.INVERSE_WINDING);
+    mRebuildPath = false;
+  }
+
+  @Override
+  public int getOpacity() {
+    return PixelFormat.TRANSLUCENT;
+  }
+
+  @Override
+  public int getAlpha() {
+    return mAlpha;
+  }
+
+  @Override
+  public void setAlpha(int alpha) {
+    mAlpha = alpha;
+    mDelegate.setAlpha(alpha);
+    invalidateSelf();
+  }
+
+  @Override
+  public void setColorFilter(ColorFilter cf) {
+    mDelegate.setColorFilter(cf);
+    invalidateSelf();
+  }
+
+  @Override
+  public void setDither(boolean dither) {
+    mDelegate.setDither(dither);
+  }
+
+  @Override
+  public void setFilterBitmap(boolean filter) {
+    mDelegate.setFilterBitmap(filter);
+  }
+
+  @Override
+  public int getIntrinsicWidth() {
+    return mDelegate.getIntrinsicWidth();
+  }
+
+  @Override
+  public int getIntrinsicHeight() {
+    return mDelegate.getIntrinsicHeight();
+  }
+
+  @Override
+  public boolean isStateful() {
+    return mDelegate.isStateful() || mBorderColor.isStateful();
+  }
+
+  @Override
+  protected boolean onStateChange(int[] state) {
+    boolean changed = false;
+    if (mDelegate.isStateful()) {
+      int width = mDelegate.getIntrinsicWidth();
+      int height = mDelegate.getIntrinsicHeight();
+      changed = mDelegate.setState(state);
+      if (width != mDelegate.getIntrinsicWidth() || height != mDelegate.getIntrinsicHeight()) {
+        updateGeometry();
+      }
+    }
+    int newColor = mBorderColor.getColorForState(state, 0);
+    if (mBorderPaint.getColor() != newColor) {
+      mBorderPaint.setColor(newColor);
+      changed = true;
+    }
+    return changed;
+  }
+
+  @Override
+  protected boolean onLevelChange(int level) {
+    return mDelegate.setLevel(level);
+  }
+
+  @Override
+  public boolean setVisible(boolean visible, boolean restart) {
+    mDelegate.setVisible(visible, restart);
+    return super.setVisible(visible, restart);
+  }
+
+  @Override
+  public void jumpToCurrentState() {
+    mDelegate.jumpToCurrentState();
+  }
+
+  @NonNull
+  @Override
+  public Drawable mutate() {
+    mDelegate.mutate();
+    return this;
+  }
+
+  /**
+   * @return a state whose drawables wrap a copy of the delegate with the same rounding, or null if
+   * the delegate has no constant state.
+   */
+  @Override
+  public ConstantState getConstantState() {
+    ConstantState delegateState = mDelegate.getConstantState();
+    return delegateState != null ? new DelegateState(this, delegateState) : null;
+  }
+
+  @Override
+  public int getChangingConfigurations() {
+    return super.getChangingConfigurations() | mDelegate.getChangingConfigurations();
+  }
+
+  // Drawable.Callback
+
+  @Override
+  public void invalidateDrawable(@NonNull Drawable who) {
+    invalidateSelf();
+  }
+
+  @Override
+  public void scheduleDrawable(@NonNull Drawable who, @NonNull Runnable what, long when) {
+    scheduleSelf(what, when);
+  }
+
+  @Override
+  public void unscheduleDrawable(@NonNull Drawable who, @NonNull Runnable what) {
+    unscheduleSelf(what);
+  }
+
+  // Animatable
+
+  @Override
+  public void start() {
+    if (mDelegate instanceof Animatable) {
+      ((Animatable) mDelegate).start();
+    }
+  }
+
+  @Override
+  public void stop() {
+    if (mDelegate instanceof Animatable) {
+      ((Animatable) mDelegate).stop();
+    }
+  }
+
+  @Override
+  public boolean isRunning() {
+    return mDelegate instanceof Animatable && ((Animatable) mDelegate).isRunning();
+  }
+
+  // rounding attributes, mirroring RoundedDrawable
+
+  public ScaleType getScaleType() {
+    return mScaleType;
+  }
+
+  public RoundedDelegateDrawable setScaleType(ScaleType scaleType) {
+    if (scaleType == null) {
+      scaleType = ScaleType.FIT_CENTER;
+    }
+    if (mScaleType != scaleType) {
+      mScaleType = scaleType;
+      updateGeometry();
+    }
+    return this;
+  }
+
+  /**
+   * @param corner the specific corner to get radius of.
+   * @return the corner radius of the specified corner.
+   */
+  public float getCornerRadius(@Corner int corner) {
+    return mCornerRadii[corner];
+  }
+
+  /**
+   * Sets the corner radii of all the corners.
+   *
+   * @param topLeft top left corner radius.
+   * @param topRight top right corner radius
+   * @param bottomRight bottom right corner radius.
+   * @param bottomLeft bottom left corner radius.
+   * @return the {@link RoundedDelegateDrawable} for chaining.
+   */
+  public RoundedDelegateDrawable setCornerRadius(float topLeft, float topRight, float bottomRight,
+      float bottomLeft) {
+    Radii.check(topLeft);
+    Radii.check(topRight);
+    Radii.check(bottomRight);
+    Radii.check(bottomLeft);
+
+    mCornerRadii[Corner.TOP_LEFT] = topLeft;
+    mCornerRadii[Corner.TOP_RIGHT] = topRight;
+    mCornerRadii[Corner.BOTTOM_RIGHT] = bottomRight;
+    mCornerRadii[Corner.BOTTOM_LEFT] = bottomLeft;
+    mRebuildPath = true;
+    return this;
+  }
+
+  public float getBorderWidth() {
+    return mBorderWidth;
+  }
+
+  public RoundedDelegateDrawable setBorderWidth(float width) {
+    if (mBorderWidth != width) {
+      mBorderWidth = width;
+      mBorderPaint.setStrokeWidth(width);
+      updateGeometry();
+    }
+    return this;
+  }
+
+  public ColorStateList getBorderColors() {
+    return mBorderColor;
+  }
+
+  public RoundedDelegateDrawable setBorderColor(@ColorInt int color) {
+    return setBorderColor(ColorStateList.valueOf(color));
+  }
+
+  public RoundedDelegateDrawable setBorderColor(ColorStateList colors) {
+    mBorderColor = colors != null ? colors : ColorStateList.valueOf(0);
+    mBorderPaint.setColor(mBorderColor.getColorForState(getState(),
+        RoundedDrawable.DEFAULT_BORDER_COLOR));
+    return this;
+  }
+
+  public boolean isOval() {
+    return mOval;
+  }
+
+  public RoundedDelegateDrawable setOval(boolean oval) {
+    mOval = oval;
+    mRebuildPath = true;
+    return this;
+  }
+
+  /**
+   * A snapshot of the rounding attributes, applied to each new drawable.
+   */
+  static final class DelegateState extends ConstantState {
+    private final ConstantState mDelegateState;
+    private final float[] mCornerRadii = new float[4];
+    private final boolean mOval;
+    private final float mBorderWidth;
+    private final ColorStateList mBorderColor;
+    private final ScaleType mScaleType;
+    private final int mAlpha;
+    private final int mChangingConfigurations;
+
+    DelegateState(RoundedDelegateDrawable orig, ConstantState delegateState) {
+      mDelegateState = delegateState;
+      System.arraycopy(orig.mCornerRadii, 0, mCornerRadii, 0, mCornerRadii.length);
+      mOval = orig.mOval;
+      mBorderWidth = orig.mBorderWidth;
+      mBorderColor = orig.mBorderColor;
+      mScaleType = orig.mScaleType;
+      mAlpha = orig.mAlpha;
+      mChangingConfigurations = orig.getChangingConfigurations();
+    }
+
+    @NonNull
+    @Override
+    public Drawable newDrawable() {
+      return apply(mDelegateState.newDrawable());
+    }
+
+    @NonNull
+    @Override
+    public Drawable newDrawable(Resources res) {
+      return apply(mDelegateState.newDrawable(res));
+    }
+
+    private Drawable apply(Drawable delegate) {
+      RoundedDelegateDrawable drawable = new RoundedDelegateDrawable(delegate)
+          .setScaleType(mScaleType)
+          .setCornerRadius(mCornerRadii[Corner.TOP_LEFT], mCornerRadii[Corner.TOP_RIGHT],
+              mCornerRadii[Corner.BOTTOM_RIGHT], mCornerRadii[Corner.BOTTOM_LEFT])
+          .setBorderWidth(mBorderWidth)
+          .setBorderColor(mBorderColor)
+          .setOval(mOval);
+      if (mAlpha != 255) {
+        drawable.setAlpha(mAlpha);
+      }
+      return drawable;
+    }
+
+    @Override
+    public int getChangingConfigurations() {
+      return mChangingConfigurations;
+    }
+  }
+}
@@ -25,19 +25,23 @@ import android.graphics.Color;
 import android.graphics.ColorFilter;
 import android.graphics.Matrix;
 import android.graphics.Paint;
+import android.graphics.Path;
 import android.graphics.PixelFormat;
 import android.graphics.Rect;
 import android.graphics.RectF;
 import android.graphics.Shader;
 import android.graphics.drawable.BitmapDrawable;
+import android.graphics.drawable.ColorDrawable;
 import android.graphics.drawable.Drawable;
 import android.graphics.drawable.LayerDrawable;
+import android.os.Build;
 import android.support.annotation.ColorInt;
 import android.support.annotation.NonNull;
 import android.util.Log;
 import android.widget.ImageView.ScaleType;
-import java.util.HashSet;
-import java.util.Set;
+import com.makeramen.roundedimageview.core.Radii;
+import com.makeramen.roundedimageview.core.ScaleMode;
+import com.makeramen.roundedimageview.core.ShaderGeometry;
 import java.lang.Throwable;
 
 @SuppressWarnings("UnusedDeclaration")
@@ -46,47 +50,72 @@ public class RoundedDrawable extends Drawable {
   public static final String TAG = "RoundedDrawable";
   public static final int DEFAULT_BORDER_COLOR = Color.BLACK;
 
+  // only downsample sources at least this many times larger than drawn
+  private static final int DOWNSAMPLE_FACTOR = 2;
+  // keep a downsampled copy while it is within this range of the drawn size, so small bounds
+  // changes like animations don't rebuild it every frame
+  private static final float DOWNSAMPLE_MIN_RATIO = 0.9f;
+  private static final float DOWNSAMPLE_MAX_RATIO = 1.5f;
+  private static final Paint sDownsamplePaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+
+  private static volatile BitmapPool sBitmapPool;
+  private static volatile BorderRingCache sBorderRingCache;
+  private static volatile ConversionCache sConversionCache;
+
   private final RectF mBounds = new RectF();
   private final RectF mDrawableRect = new RectF();
-  private final RectF mBitmapRect = new RectF();
-  private final Bitmap mBitmap;
   private final Paint mBitmapPaint;
-  private final int mBitmapWidth;
-  private final int mBitmapHeight;
   private final RectF mBorderRect = new RectF();
   private final Paint mBorderPaint;
   private final Matrix mShaderMatrix = new Matrix();
-  private final RectF mSquareCornersRect = new RectF();
-
-  private Shader.TileMode mTileModeX = Shader.TileMode.CLAMP;
-  private Shader.TileMode mTileModeY = Shader.TileMode.CLAMP;
+  private final Matrix mDownsampledMatrix = new Matrix();
+  private final ShaderGeometry mGeometry = new ShaderGeometry();
+  private final Path mPath = new Path();
+  // [ topLeftX, topLeftY, topRightX, topRightY, bottomRightX, ... ] as expected by Path
+  private final float[] mPathRadii = new float[8];
+
+  private RoundedState mState;
+  private boolean mMutated;
+  private BitmapShader mBitmapShader;
+  // a smaller copy of the source the shader samples instead of it, see setDownsample()
+  private Bitmap mDownsampled;
+  // the shader only needs to be recreated when the tile modes change, geometry changes just
+  // update its local matrix
   private boolean mRebuildShader = true;
-
-  private float mCornerRadius = 0f;
-  // [ topLeft, topRight, bottomLeft, bottomRight ]
-  private final boolean[] mCornersRounded = new boolean[] { true, true, true, true };
-
-  private boolean mOval = false;
-  private float mBorderWidth = 0;
-  private ColorStateList mBorderColor = ColorStateList.valueOf(DEFAULT_BORDER_COLOR);
-  private ScaleType mScaleType = ScaleType.FIT_CENTER;
+  private boolean mUpdateShaderMatrix = true;
+  private boolean mRebuildPath = true;
+  private int mAlpha = 255;
+  // cached result of getOpacity(), UNKNOWN until computed or after anything it depends on changed
+  private int mOpacity = PixelFormat.UNKNOWN;
+  // set by RoundedImageView while an opaque image hides this background
+  private boolean mSkipDraw;
+  // the shared pre-rendered border, see setBorderRingCache()
+  private BorderRingCache mBorderRingCache;
+  private Bitmap mBorderRing;
+  private float mBorderRingLeft;
+  private float mBorderRingTop;
+  // lookups since the border last changed, the cache renders a ring on the second one
+  private int mBorderRingLookups;
 
   public RoundedDrawable(Bitmap bitmap) {
-    mBitmap = bitmap;
+    this(new RoundedState(bitmap));
+  }
 
-    mBitmapWidth = bitmap.getWidth();
-    mBitmapHeight = bitmap.getHeight();
-    mBitmapRect.set(0, 0, mBitmapWidth, mBitmapHeight);
+  private RoundedDrawable(RoundedState state) {
+    mState = state;
 
     mBitmapPaint = new Paint();
     mBitmapPaint.setStyle(Paint.Style.FILL);
     mBitmapPaint.setAntiAlias(true);
+    if (state.mBitmap == null) {
+      mBitmapPaint.setColor(state.mColor);
+    }
 
     mBorderPaint = new Paint();
     mBorderPaint.setStyle(Paint.Style.STROKE);
     mBorderPaint.setAntiAlias(true);
-    mBorderPaint.setColor(mBorderColor.getColorForState(getState(), DEFAULT_BORDER_COLOR));
-    mBorderPaint.setStrokeWidth(mBorderWidth);
+    mBorderPaint.setColor(state.mBorderColor.getColorForState(getState(), DEFAULT_BORDER_COLOR));
+    mBorderPaint.setStrokeWidth(state.mBorderWidth);
   }
 
   public static RoundedDrawable fromBitmap(Bitmap bitmap) {
@@ -97,10 +126,57 @@ public class RoundedDrawable extends Drawable {
     }
   }
 
+  /**
+   * Creates a drawable that fills its rounded shape with a solid color, drawn with a plain paint
+   * instead of a bitmap and shader. Like a {@link ColorDrawable} it fills the bounds whatever the
+   * scale type and has no intrinsic size.
+   *
+   * @param color the fill color.
+   * @return the new drawable.
+   */
+  public static RoundedDrawable fromColor(@ColorInt int color) {
+    return new RoundedDrawable(new RoundedState(color));
+  }
+
   public static Drawable fromDrawable(Drawable drawable) {
+    return fromDrawable(drawable, false);
+  }
+
+  /**
+   * Like {@link #fromDrawable(Drawable)}, but optionally wraps drawables that aren't backed by a
+   * bitmap in a {@link RoundedDelegateDrawable} instead of rasterizing them.
+   *
+   * @param drawable the drawable to convert.
+   * @param delegate true to round vectors, gradients, animations etc. at draw time.
+   * @return the converted drawable.
+   */
+  public static Drawable fromDrawable(Drawable drawable, boolean delegate) {
+    return fromDrawable(drawable, delegate, false);
+  }
+
+  /**
+   * @param fromResources true if {@code drawable} was just loaded from resources and has no
+   *     per-instance changes such as a tint or color filter, so its rasterized bitmap may be
+   *     shared through the {@link ConversionCache} with every drawable of the same resource.
+   */
+  static Drawable fromDrawable(Drawable drawable, boolean delegate, boolean fromResources) {
+    if (!RoundedMetrics.sEnabled) {
+      return convert(drawable, delegate, fromResources);
+    }
+    RoundedMetrics.beginSection("RoundedDrawable#fromDrawable");
+    long start = System.nanoTime();
+    try {
+      return convert(drawable, delegate, fromResources);
+    } finally {
+      RoundedMetrics.onConversion(start);
+      RoundedMetrics.endSection();
+    }
+  }
+
+  private static Drawable convert(Drawable drawable, boolean delegate, boolean fromResources) {
     if (drawable != null) {
-      if (drawable instanceof RoundedDrawable) {
-        // just return if it's already a RoundedDrawable
+      if (drawable instanceof RoundedDrawable || drawable instanceof RoundedDelegateDrawable) {
+        // just return if it's already rounded
         return drawable;
       } else if (drawable instanceof LayerDrawable) {
         ConstantState cs = drawable.mutate().getConstantState();
@@ -111,13 +187,21 @@ public class RoundedDrawable extends Drawable {
         // loop through layers to and change to RoundedDrawables if possible
         for (int i = 0; i < num; i++) {
           Drawable d = ld.getDrawable(i);
-          ld.setDrawableByLayerId(ld.getId(i), fromDrawable(d));
+          ld.setDrawableByLayerId(ld.getId(i), convert(d, delegate, fromResources));
         }
         return ld;
+      } else if (drawable instanceof ColorDrawable
+          && Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+        return fromColor(((ColorDrawable) drawable).getColor());
+      } else if (delegate && !(drawable instanceof BitmapDrawable)) {
+        return new RoundedDelegateDrawable(drawable);
       }
 
       // try to get a bitmap from the drawable and
-      Bitmap bm = drawableToBitmap(drawable);
+      // only share it if the pixels can't differ from other drawables with the same constant state
+      ConversionCache cache = sConversionCache;
+      Bitmap bm = fromResources && cache != null && !(drawable instanceof BitmapDrawable)
+          ? cache.get(drawable) : drawableToBitmap(drawable);
       if (bm != null) {
         return new RoundedDrawable(bm);
       }
@@ -134,7 +218,10 @@ public class RoundedDrawable extends Drawable {
     int width = Math.max(drawable.getIntrinsicWidth(), 2);
     int height = Math.max(drawable.getIntrinsicHeight(), 2);
     try {
-      bitmap = Bitmap.createBitmap(width, height, Config.ARGB_8888);
+      bitmap = obtainBitmap(width, height, Config.ARGB_8888);
+      if (RoundedMetrics.sEnabled) {
+        RoundedMetrics.onBitmapAllocated(bitmap);
+      }
       Canvas canvas = new Canvas(bitmap);
       drawable.setBounds(0, 0, canvas.getWidth(), canvas.getHeight());
       drawable.draw(canvas);
@@ -147,120 +234,155 @@ public class RoundedDrawable extends Drawable {
     return bitmap;
   }
 
-  public Bitmap getSourceBitmap() {
-    return mBitmap;
+  /**
+   * Sets the pool that bitmaps for {@link #drawableToBitmap(Drawable)}, {@link #toBitmap()} and
+   * transformations are taken from and returned to. Pass null (the default) to always allocate.
+   *
+   * @param pool the pool to use, e.g. a {@link LruBitmapPool}.
+   */
+  public static void setBitmapPool(BitmapPool pool) {
+    sBitmapPool = pool;
   }
 
-  @Override
-  public boolean isStateful() {
-    return mBorderColor.isStateful();
+  public static BitmapPool getBitmapPool() {
+    return sBitmapPool;
   }
 
-  @Override
-  protected boolean onStateChange(int[] state) {
-    int newColor = mBorderColor.getColorForState(state, 0);
-    if (mBorderPaint.getColor() != newColor) {
-      mBorderPaint.setColor(newColor);
-      return true;
-    } else {
-      return super.onStateChange(state);
-    }
+  /**
+   * Sets the cache that borders are drawn from as pre-rendered rings shared between drawables,
+   * instead of stroking them every frame. Pass null (the default) to always stroke.
+   *
+   * @param cache the cache to use.
+   */
+  public static void setBorderRingCache(BorderRingCache cache) {
+    sBorderRingCache = cache;
   }
 
-  private void updateShaderMatrix() {
-    float scale;
-    float dx;
-    float dy;
-
-    switch (mScaleType) {
-      case CENTER:
-        mBorderRect.set(mBounds);
-        mBorderRect.inset(mBorderWidth / 2, mBorderWidth / 2);
+  public static BorderRingCache getBorderRingCache() {
+    return sBorderRingCache;
+  }
 
-        mShaderMatrix.reset();
-        mShaderMatrix.setTranslate((int) ((mBorderRect.width() - mBitmapWidth) * 0.5f + 0.5f),
-            (int) ((mBorderRect.height() - mBitmapHeight) * 0.5f + 0.5f));
-        break;
+  /**
+   * Sets the cache that non-bitmap drawables loaded from resources by {@link RoundedImageView} are
+   * rasterized through, so the same resource converted many times shares one bitmap. Pass null
+   * (the default) to rasterize every conversion.
+   *
+   * @param cache the cache to use.
+   */
+  public static void setConversionCache(ConversionCache cache) {
+    sConversionCache = cache;
+  }
 
-      case CENTER_CROP:
-        mBorderRect.set(mBounds);
-        mBorderRect.inset(mBorderWidth / 2, mBorderWidth / 2);
+  public static ConversionCache getConversionCache() {
+    return sConversionCache;
+  }
 
-        mShaderMatrix.reset();
+  static Bitmap obtainBitmap(int width, int height, Config config) {
+    return obtainBitmap(sBitmapPool, width, height, config);
+  }
 
-        dx = 0;
-        dy = 0;
+  private static Bitmap obtainBitmap(BitmapPool pool, int width, int height, Config config) {
+    Bitmap bitmap = pool != null ? pool.get(width, height, config) : null;
+    return bitmap != null ? bitmap : Bitmap.createBitmap(width, height, config);
+  }
 
-        if (mBitmapWidth * mBorderRect.height() > mBorderRect.width() * mBitmapHeight) {
-          scale = mBorderRect.height() / (float) mBitmapHeight;
-          dx = (mBorderRect.width() - mBitmapWidth * scale) * 0.5f;
-        } else {
-          scale = mBorderRect.width() / (float) mBitmapWidth;
-          dy = (mBorderRect.height() - mBitmapHeight * scale) * 0.5f;
-        }
+  /**
+   * Returns a bitmap this library allocated and no longer uses to the pool, or recycles it.
+   */
+  static void releaseBitmap(Bitmap bitmap) {
+    BitmapPool pool = sBitmapPool;
+    if (pool != null) {
+      pool.put(bitmap);
+    } else {
+      bitmap.recycle();
+    }
+  }
 
-        mShaderMatrix.setScale(scale, scale);
-        mShaderMatrix.postTranslate((int) (dx + 0.5f) + mBorderWidth / 2,
-            (int) (dy + 0.5f) + mBorderWidth / 2);
-        break;
+  public Bitmap getSourceBitmap() {
+    return mState.mBitmap;
+  }
 
-      case CENTER_INSIDE:
-        mShaderMatrix.reset();
+  /**
+   * @return the fill color of a drawable created with {@link #fromColor(int)}, or 0 for bitmaps.
+   */
+  @ColorInt
+  public int getColor() {
+    return mState.mColor;
+  }
 
-        if (mBitmapWidth <= mBounds.width() && mBitmapHeight <= mBounds.height()) {
-          scale = 1.0f;
-        } else {
-          scale = Math.min(mBounds.width() / (float) mBitmapWidth,
-              mBounds.height() / (float) mBitmapHeight);
-        }
+  @Override
+  public ConstantState getConstantState() {
+    mState.mChangingConfigurations = getChangingConfigurations();
+    return mState;
+  }
 
-        dx = (int) ((mBounds.width() - mBitmapWidth * scale) * 0.5f + 0.5f);
-        dy = (int) ((mBounds.height() - mBitmapHeight * scale) * 0.5f + 0.5f);
+  @Override
+  public int getChangingConfigurations() {
+    return super.getChangingConfigurations() | mState.mChangingConfigurations;
+  }
 
-        mShaderMatrix.setScale(scale, scale);
-        mShaderMatrix.postTranslate(dx, dy);
+  /**
+   * Makes this drawable's rounding spec independent of any other {@link RoundedDrawable} created
+   * from the same {@link ConstantState}. The source bitmap itself is never copied.
+   */
+  @NonNull
+  @Override
+  public Drawable mutate() {
+    if (!mMutated && super.mutate() == this) {
+      mState = new RoundedState(mState);
+      mMutated = true;
+    }
+    return this;
+  }
 
-        mBorderRect.set(mBitmapRect);
-        mShaderMatrix.mapRect(mBorderRect);
-        mBorderRect.inset(mBorderWidth / 2, mBorderWidth / 2);
-        mShaderMatrix.setRectToRect(mBitmapRect, mBorderRect, Matrix.ScaleToFit.FILL);
-        break;
+  @Override
+  public boolean isStateful() {
+    return mState.mBorderColor.isStateful();
+  }
 
-      default:
-      case FIT_CENTER:
-        mBorderRect.set(mBitmapRect);
-        mShaderMatrix.setRectToRect(mBitmapRect, mBounds, Matrix.ScaleToFit.CENTER);
-        mShaderMatrix.mapRect(mBorderRect);
-        mBorderRect.inset(mBorderWidth / 2, mBorderWidth / 2);
-        mShaderMatrix.setRectToRect(mBitmapRect, mBorderRect, Matrix.ScaleToFit.FILL);
-        break;
+  @Override
+  protected boolean onStateChange(int[] state) {
+    int newColor = mState.mBorderColor.getColorForState(state, 0);
+    if (mBorderPaint.getColor() != newColor) {
+      mBorderPaint.setColor(newColor);
+      mOpacity = PixelFormat.UNKNOWN;
+      mBorderRingLookups = 0;
+      return true;
+    } else {
+      return super.onStateChange(state);
+    }
+  }
 
-      case FIT_END:
-        mBorderRect.set(mBitmapRect);
-        mShaderMatrix.setRectToRect(mBitmapRect, mBounds, Matrix.ScaleToFit.END);
-        mShaderMatrix.mapRect(mBorderRect);
-        mBorderRect.inset(mBorderWidth / 2, mBorderWidth / 2);
-        mShaderMatrix.setRectToRect(mBitmapRect, mBorderRect, Matrix.ScaleToFit.FILL);
-        break;
+  private void updateShaderMatrix() {
+    final boolean traced = RoundedMetrics.sEnabled;
+    if (traced) {
+      RoundedMetrics.beginSection("RoundedDrawable#updateShaderMatrix");
+      RoundedMetrics.onMatrixUpdate();
+    }
 
-      case FIT_START:
-        mBorderRect.set(mBitmapRect);
-        mShaderMatrix.setRectToRect(mBitmapRect, mBounds, Matrix.ScaleToFit.START);
-        mShaderMatrix.mapRect(mBorderRect);
-        mBorderRect.inset(mBorderWidth / 2, mBorderWidth / 2);
-        mShaderMatrix.setRectToRect(mBitmapRect, mBorderRect, Matrix.ScaleToFit.FILL);
-        break;
+    final RoundedState state = mState;
+    // a solid color has no size of its own and fills the bounds like with FIT_XY
+    final boolean color = state.mBitmap == null;
+    final ShaderGeometry geometry = mGeometry.compute(
+        color ? ScaleMode.FIT_XY : toScaleMode(state.mScaleType),
+        color ? Math.max(1, (int) mBounds.width()) : state.mBitmapWidth,
+        color ? Math.max(1, (int) mBounds.height()) : state.mBitmapHeight,
+        mBounds.left, mBounds.top, mBounds.right, mBounds.bottom, state.mBorderWidth);
 
-      case FIT_XY:
-        mBorderRect.set(mBounds);
-        mBorderRect.inset(mBorderWidth / 2, mBorderWidth / 2);
-        mShaderMatrix.reset();
-        mShaderMatrix.setRectToRect(mBitmapRect, mBorderRect, Matrix.ScaleToFit.FILL);
-        break;
-    }
+    mShaderMatrix.setScale(geometry.getScaleX(), geometry.getScaleY());
+    mShaderMatrix.postTranslate(geometry.getTranslateX(), geometry.getTranslateY());
+    mBorderRect.set(geometry.getLeft(), geometry.getTop(), geometry.getRight(),
+        geometry.getBottom());
 
     mDrawableRect.set(mBorderRect);
-    mRebuildShader = true;
+    mUpdateShaderMatrix = true;
+    mRebuildPath = true;
+    mOpacity = PixelFormat.UNKNOWN;
+    mBorderRingLookups = 0;
+
+    if (traced) {
+      RoundedMetrics.endSection();
+    }
   }
 
   @Override
@@ -274,131 +396,336 @@ public class RoundedDrawable extends Drawable {
 
   @Override
   public void draw(@NonNull Canvas canvas) {
-    if (mRebuildShader) {
-      BitmapShader bitmapShader = new BitmapShader(mBitmap, mTileModeX, mTileModeY);
-      if (mTileModeX == Shader.TileMode.CLAMP && mTileModeY == Shader.TileMode.CLAMP) {
-        bitmapShader.setLocalMatrix(mShaderMatrix);
-      }
-      mBitmapPaint.setShader(bitmapShader);
-      mRebuildShader = false;
+    if (mSkipDraw) {
+      return;
+    }
+    if (!RoundedMetrics.sEnabled) {
+      drawRounded(canvas);
+      return;
     }
+    RoundedMetrics.beginSection("RoundedDrawable#draw");
+    RoundedMetrics.onDraw();
+    try {
+      drawRounded(canvas);
+    } finally {
+      RoundedMetrics.endSection();
+    }
+  }
+
+  private void drawRounded(Canvas canvas) {
+    final RoundedState state = mState;
+    updateShader();
 
-    if (mOval) {
-      if (mBorderWidth > 0) {
-        canvas.drawOval(mDrawableRect, mBitmapPaint);
+    final boolean border = state.mBorderWidth > 0;
+    final boolean ring = border && updateBorderRing();
+    final boolean strokeBorder = border && !ring;
+
+    if (state.mOval) {
+      canvas.drawOval(mDrawableRect, mBitmapPaint);
+      if (strokeBorder) {
         canvas.drawOval(mBorderRect, mBorderPaint);
-      } else {
-        canvas.drawOval(mDrawableRect, mBitmapPaint);
       }
-    } else {
-      if (any(mCornersRounded)) {
-        float radius = mCornerRadius;
-        if (mBorderWidth > 0) {
-          canvas.drawRoundRect(mDrawableRect, radius, radius, mBitmapPaint);
+    } else if (uniform(state.mCornerRadii)) {
+      float radius = state.mCornerRadii[0];
+      if (radius > 0) {
+        canvas.drawRoundRect(mDrawableRect, radius, radius, mBitmapPaint);
+        if (strokeBorder) {
           canvas.drawRoundRect(mBorderRect, radius, radius, mBorderPaint);
-          redrawBitmapForSquareCorners(canvas);
-          redrawBorderForSquareCorners(canvas);
-        } else {
-          canvas.drawRoundRect(mDrawableRect, radius, radius, mBitmapPaint);
-          redrawBitmapForSquareCorners(canvas);
         }
       } else {
         canvas.drawRect(mDrawableRect, mBitmapPaint);
-        if (mBorderWidth > 0) {
+        if (strokeBorder) {
           canvas.drawRect(mBorderRect, mBorderPaint);
         }
       }
+    } else {
+      if (mRebuildPath) {
+        rebuildPath();
+      }
+      // the drawable and border rects are the same, so one path serves both
+      canvas.drawPath(mPath, mBitmapPaint);
+      if (strokeBorder) {
+        canvas.drawPath(mPath, mBorderPaint);
+      }
+    }
+
+    if (ring) {
+      canvas.drawBitmap(mBorderRing, mBorderRingLeft, mBorderRingTop, null);
+    }
+  }
+
+  /**
+   * Looks up the pre-rendered border ring when the border changed or the cache was swapped.
+   *
+   * @return true if the border should be drawn from {@link #mBorderRing}.
+   */
+  private boolean updateBorderRing() {
+    final BorderRingCache cache = sBorderRingCache;
+    if (cache == null) {
+      mBorderRing = null;
+      mBorderRingCache = null;
+      return false;
+    }
+    if (cache != mBorderRingCache) {
+      mBorderRingCache = cache;
+      mBorderRingLookups = 0;
+    }
+    // the cache only renders a ring the second time it's asked for, after that keep stroking until
+    // the border changes instead of asking every frame for a ring that is too large or won't render
+    if (mBorderRingLookups == 0 || mBorderRing == null && mBorderRingLookups < 2) {
+      final RoundedState state = mState;
+      mBorderRing = cache.get(mBorderRect, state.mCornerRadii, state.mOval, state.mBorderWidth,
+          mBorderPaint.getColor());
+      mBorderRingLeft = BorderRingCache.ringLeft(mBorderRect, state.mBorderWidth);
+      mBorderRingTop = BorderRingCache.ringTop(mBorderRect, state.mBorderWidth);
+      mBorderRingLookups++;
     }
+    return mBorderRing != null;
   }
 
-  private void redrawBitmapForSquareCorners(Canvas canvas) {
-    if (all(mCornersRounded)) {
-      // no square corners
+  private void updateShader() {
+    final RoundedState state = mState;
+    if (state.mBitmap == null) {
+      // solid colors are drawn with the paint color alone
       return;
     }
+    if (state.mDownsample && (mUpdateShaderMatrix || mRebuildShader)) {
+      updateDownsampled();
+    }
+
+    if (mRebuildShader) {
+      Bitmap source = mDownsampled != null ? mDownsampled : state.mBitmap;
+      mBitmapShader = new BitmapShader(source, state.mTileModeX, state.mTileModeY);
+      mBitmapPaint.setShader(mBitmapShader);
+      if (RoundedMetrics.sEnabled) {
+        RoundedMetrics.onShaderBuild();
+      }
+      mRebuildShader = false;
+      mUpdateShaderMatrix = true;
+    }
 
-    if (mCornerRadius == 0) {
-      return; // no round corners
+    if (mUpdateShaderMatrix) {
+      if (state.mTileModeX == Shader.TileMode.CLAMP && state.mTileModeY == Shader.TileMode.CLAMP) {
+        if (mDownsampled != null) {
+          mDownsampledMatrix.set(mShaderMatrix);
+          mDownsampledMatrix.preScale(state.mBitmapWidth / (float) mDownsampled.getWidth(),
+              state.mBitmapHeight / (float) mDownsampled.getHeight());
+          mBitmapShader.setLocalMatrix(mDownsampledMatrix);
+        } else {
+          mBitmapShader.setLocalMatrix(mShaderMatrix);
+        }
+        // on API 21-25 setLocalMatrix() replaces the native shader, which the paint only picks up
+        // when the shader is set again
+        mBitmapPaint.setShader(mBitmapShader);
+      }
+      mUpdateShaderMatrix = false;
     }
+  }
 
-    float left = mDrawableRect.left;
-    float top = mDrawableRect.top;
-    float right = left + mDrawableRect.width();
-    float bottom = top + mDrawableRect.height();
-    float radius = mCornerRadius;
+  /**
+   * Creates, keeps or drops the downsampled copy of the source for the current geometry, flagging
+   * the shader for a rebuild when the copy changed.
+   */
+  private void updateDownsampled() {
+    final RoundedState state = mState;
+    int width = 0;
+    int height = 0;
+    if (state.mTileModeX == Shader.TileMode.CLAMP && state.mTileModeY == Shader.TileMode.CLAMP) {
+      width = (int) Math.ceil(state.mBitmapWidth * mGeometry.getScaleX());
+      height = (int) Math.ceil(state.mBitmapHeight * mGeometry.getScaleY());
+    }
 
-    if (!mCornersRounded[Corner.TOP_LEFT]) {
-      mSquareCornersRect.set(left, top, left + radius, top + radius);
-      canvas.drawRect(mSquareCornersRect, mBitmapPaint);
+    if (width <= 0 || height <= 0
+        || state.mBitmapWidth < width * DOWNSAMPLE_FACTOR
+        || state.mBitmapHeight < height * DOWNSAMPLE_FACTOR) {
+      if (mDownsampled != null) {
+        releaseDownsampled();
+        mRebuildShader = true;
+      }
+      return;
     }
 
-    if (!mCornersRounded[Corner.TOP_RIGHT]) {
-      mSquareCornersRect.set(right - radius, top, right, radius);
-      canvas.drawRect(mSquareCornersRect, mBitmapPaint);
+    if (mDownsampled != null
+        && mDownsampled.getWidth() >= width * DOWNSAMPLE_MIN_RATIO
+        && mDownsampled.getWidth() <= width * DOWNSAMPLE_MAX_RATIO
+        && mDownsampled.getHeight() >= height * DOWNSAMPLE_MIN_RATIO
+        && mDownsampled.getHeight() <= height * DOWNSAMPLE_MAX_RATIO) {
+      return;
     }
 
-    if (!mCornersRounded[Corner.BOTTOM_RIGHT]) {
-      mSquareCornersRect.set(right - radius, bottom - radius, right, bottom);
-      canvas.drawRect(mSquareCornersRect, mBitmapPaint);
+    Bitmap downsampled = downsample(state.mBitmap, width, height);
+    if (downsampled != null) {
+      releaseDownsampled();
+      mDownsampled = downsampled;
+      mRebuildShader = true;
     }
+  }
 
-    if (!mCornersRounded[Corner.BOTTOM_LEFT]) {
-      mSquareCornersRect.set(left, bottom - radius, left + radius, bottom);
-      canvas.drawRect(mSquareCornersRect, mBitmapPaint);
+  /**
+   * Scales {@code source} down in filtered halving steps, like a mip chain, and then to the exact
+   * size, so every pixel of the source contributes instead of being skipped.
+   *
+   * @return the scaled copy from the bitmap pool, or null if it could not be allocated.
+   */
+  private static Bitmap downsample(Bitmap source, int width, int height) {
+    Config config = source.getConfig() != null ? source.getConfig() : Config.ARGB_8888;
+    Bitmap current = source;
+    try {
+      while (current.getWidth() / 2 >= width && current.getHeight() / 2 >= height) {
+        Bitmap half = scale(current, current.getWidth() / 2, current.getHeight() / 2, config);
+        if (current != source) {
+          releaseBitmap(current);
+        }
+        current = half;
+      }
+      if (current.getWidth() != width || current.getHeight() != height) {
+        Bitmap scaled = scale(current, width, height, config);
+        if (current != source) {
+          releaseBitmap(current);
+        }
+        current = scaled;
+      }
+      return current;
+    } catch (Throwable e) {
+      Log.w(TAG, "Failed to downsample bitmap!", e);
+      if (current != source) {
+        releaseBitmap(current);
+      }
+      return null;
     }
   }
 
-  private void redrawBorderForSquareCorners(Canvas canvas) {
-    if (all(mCornersRounded)) {
-      // no square corners
-      return;
+  private static Bitmap scale(Bitmap source, int width, int height, Config config) {
+    Bitmap scaled = obtainBitmap(width, height, config);
+    if (RoundedMetrics.sEnabled) {
+      RoundedMetrics.onBitmapAllocated(scaled);
     }
+    new Canvas(scaled).drawBitmap(source, null, new Rect(0, 0, width, height), sDownsamplePaint);
+    return scaled;
+  }
 
-    if (mCornerRadius == 0) {
-      return; // no round corners
+  /**
+   * Returns the downsampled copy of the source, if any, to the bitmap pool. It is recreated on the
+   * next draw if still needed.
+   */
+  void releaseDownsampled() {
+    if (mDownsampled != null) {
+      Bitmap downsampled = mDownsampled;
+      mDownsampled = null;
+      mRebuildShader = true;
+      releaseBitmap(downsampled);
     }
+  }
 
-    float left = mDrawableRect.left;
-    float top = mDrawableRect.top;
-    float right = left + mDrawableRect.width();
-    float bottom = top + mDrawableRect.height();
-    float radius = mCornerRadius;
-    float offset = mBorderWidth / 2;
+  /**
+   * Drops the shader, the downsampled copy and the border ring, which are all rebuilt on the next
+   * draw.
+   *
+   * @return the bytes of the downsampled copy that was released.
+   */
+  int releaseCaches() {
+    int bytes = mDownsampled != null ? LruBitmapPool.byteCount(mDownsampled) : 0;
+    releaseDownsampled();
+    mBitmapPaint.setShader(null);
+    mBitmapShader = null;
+    mRebuildShader = true;
+    mBorderRing = null;
+    mBorderRingLookups = 0;
+    return bytes;
+  }
 
-    if (!mCornersRounded[Corner.TOP_LEFT]) {
-      canvas.drawLine(left - offset, top, left + radius, top, mBorderPaint);
-      canvas.drawLine(left, top - offset, left, top + radius, mBorderPaint);
-    }
+  public boolean isDownsampling() {
+    return mState.mDownsample;
+  }
 
-    if (!mCornersRounded[Corner.TOP_RIGHT]) {
-      canvas.drawLine(right - radius - offset, top, right, top, mBorderPaint);
-      canvas.drawLine(right, top - offset, right, top + radius, mBorderPaint);
+  /**
+   * Draws from a copy of the source scaled down to about the drawn size when the source is at
+   * least twice as large, instead of sampling the full size bitmap every frame. This saves GPU
+   * memory and upload time and reduces aliasing for large images shown as thumbnails. The copy is
+   * taken from the {@link #setBitmapPool(BitmapPool) bitmap pool} and rebuilt lazily when the
+   * bounds change noticeably. Has no effect on solid colors or with non-CLAMP tile modes.
+   *
+   * @param downsample true to downsample large sources.
+   * @return the {@link RoundedDrawable} for chaining.
+   */
+  public RoundedDrawable setDownsample(boolean downsample) {
+    if (mState.mDownsample != downsample) {
+      mState.mDownsample = downsample;
+      if (!downsample) {
+        releaseDownsampled();
+      }
+      mUpdateShaderMatrix = true;
+      invalidateSelf();
     }
+    return this;
+  }
 
-    if (!mCornersRounded[Corner.BOTTOM_RIGHT]) {
-      canvas.drawLine(right - radius - offset, bottom, right + offset, bottom, mBorderPaint);
-      canvas.drawLine(right, bottom - radius, right, bottom, mBorderPaint);
+  /**
+   * Does the work {@link #draw(Canvas)} would otherwise do lazily on the first frame: builds the
+   * shader, applies its matrix and the corner path for the current bounds, and uploads the bitmap.
+   * Safe to call off the main thread as long as the drawable is not yet attached to a view.
+   */
+  void prepareToDraw() {
+    updateShader();
+    if (!mState.mOval && !uniform(mState.mCornerRadii) && mRebuildPath) {
+      rebuildPath();
     }
+    if (mState.mBitmap != null) {
+      mState.mBitmap.prepareToDraw();
+    }
+  }
 
-    if (!mCornersRounded[Corner.BOTTOM_LEFT]) {
-      canvas.drawLine(left - offset, bottom, left + radius, bottom, mBorderPaint);
-      canvas.drawLine(left, bottom - radius, left, bottom, mBorderPaint);
+  private void rebuildPath() {
+    final float[] radii = mState.mCornerRadii;
+    for (int i = 0; i < radii.length; i++) {
+      mPathRadii[i * 2] = radii[i];
+      mPathRadii[i * 2 + 1] = radii[i];
     }
+    mPath.rewind();
+    mPath.addRoundRect(mBorderRect, mPathRadii, Path.Direction.CW);
+    mRebuildPath = false;
   }
 
+  /**
+   * @return {@link PixelFormat#OPAQUE} when the current bounds are fully covered by opaque pixels,
+   * taking the source's alpha, the alpha and color filter, the rounding, the border and the scale
+   * type into account, {@link PixelFormat#TRANSLUCENT} otherwise. Cached until one of those
+   * changes.
+   */
   @Override
   public int getOpacity() {
-    return PixelFormat.TRANSLUCENT;
+    if (mOpacity == PixelFormat.UNKNOWN) {
+      mOpacity = mBounds.isEmpty() || mBitmapPaint.getColorFilter() != null || requiresAlpha()
+          ? PixelFormat.TRANSLUCENT : PixelFormat.OPAQUE;
+    }
+    return mOpacity;
+  }
+
+  /**
+   * Skips drawing entirely while {@code skip} is true, used for a background hidden by an opaque
+   * image. Doesn't invalidate, the caller sets it right before drawing.
+   */
+  void setSkipDraw(boolean skip) {
+    mSkipDraw = skip;
   }
 
   @Override
   public int getAlpha() {
-    return mBitmapPaint.getAlpha();
+    return mAlpha;
   }
 
   @Override
   public void setAlpha(int alpha) {
-    mBitmapPaint.setAlpha(alpha);
+    mAlpha = alpha;
+    if (mState.mBitmap == null) {
+      // modulate instead of replacing the color's own alpha, like ColorDrawable
+      int color = mState.mColor;
+      int colorAlpha = Color.alpha(color) * (alpha + (alpha >> 7)) >> 8;
+      mBitmapPaint.setColor((color & 0x00ffffff) | (colorAlpha << 24));
+    } else {
+      mBitmapPaint.setAlpha(alpha);
+    }
+    mOpacity = PixelFormat.UNKNOWN;
     invalidateSelf();
   }
 
@@ -410,6 +737,7 @@ public class RoundedDrawable extends Drawable {
   @Override
   public void setColorFilter(ColorFilter cf) {
     mBitmapPaint.setColorFilter(cf);
+    mOpacity = PixelFormat.UNKNOWN;
     invalidateSelf();
   }
 
@@ -427,19 +755,19 @@ public class RoundedDrawable extends Drawable {
 
   @Override
   public int getIntrinsicWidth() {
-    return mBitmapWidth;
+    return mState.mBitmapWidth;
   }
 
   @Override
   public int getIntrinsicHeight() {
-    return mBitmapHeight;
+    return mState.mBitmapHeight;
   }
 
   /**
-   * @return the corner radius.
+   * @return the largest corner radius.
    */
   public float getCornerRadius() {
-    return mCornerRadius;
+    return Radii.max(mState.mCornerRadii);
   }
 
   /**
@@ -447,7 +775,7 @@ public class RoundedDrawable extends Drawable {
    * @return the corner radius of the specified corner.
    */
   public float getCornerRadius(@Corner int corner) {
-    return mCornersRounded[corner] ? mCornerRadius : 0f;
+    return mState.mCornerRadii[corner];
   }
 
   /**
@@ -469,22 +797,14 @@ public class RoundedDrawable extends Drawable {
    * @return the {@link RoundedDrawable} for chaining.
    */
   public RoundedDrawable setCornerRadius(@Corner int corner, float radius) {
-    if (radius != 0 && mCornerRadius != 0 && mCornerRadius != radius) {
-      throw new IllegalArgumentException("Multiple nonzero corner radii not yet supported.");
+    if (mState.mCornerRadii[corner] == radius) {
+      return this;
     }
-
-    if (radius == 0) {
-      if (only(corner, mCornersRounded)) {
-        mCornerRadius = 0;
-      }
-      mCornersRounded[corner] = false;
-    } else {
-      if (mCornerRadius == 0) {
-        mCornerRadius = radius;
-      }
-      mCornersRounded[corner] = true;
-    }
-
+    checkRadius(radius);
+    mState.mCornerRadii[corner] = radius;
+    mRebuildPath = true;
+    mOpacity = PixelFormat.UNKNOWN;
+    mBorderRingLookups = 0;
     return this;
   }
 
@@ -499,47 +819,49 @@ public class RoundedDrawable extends Drawable {
    */
   public RoundedDrawable setCornerRadius(float topLeft, float topRight, float bottomRight,
       float bottomLeft) {
-    Set<Float> radiusSet = new HashSet<>(4);
-    radiusSet.add(topLeft);
-    radiusSet.add(topRight);
-    radiusSet.add(bottomRight);
-    radiusSet.add(bottomLeft);
-
-    radiusSet.remove(0f);
-
-    if (radiusSet.size() > 1) {
-      throw new IllegalArgumentException("Multiple nonzero corner radii not yet supported.");
-    }
-
-    if (!radiusSet.isEmpty()) {
-      float radius = radiusSet.iterator().next();
-      if (Float.isInfinite(radius) || Float.isNaN(radius) || radius < 0) {
-        throw new IllegalArgumentException("Invalid radius value: " + radius);
-      }
-      mCornerRadius = radius;
-    } else {
-      mCornerRadius = 0f;
+    final float[] radii = mState.mCornerRadii;
+    if (radii[Corner.TOP_LEFT] == topLeft
+        && radii[Corner.TOP_RIGHT] == topRight
+        && radii[Corner.BOTTOM_RIGHT] == bottomRight
+        && radii[Corner.BOTTOM_LEFT] == bottomLeft) {
+      return this;
     }
 
-    mCornersRounded[Corner.TOP_LEFT] = topLeft > 0;
-    mCornersRounded[Corner.TOP_RIGHT] = topRight > 0;
-    mCornersRounded[Corner.BOTTOM_RIGHT] = bottomRight > 0;
-    mCornersRounded[Corner.BOTTOM_LEFT] = bottomLeft > 0;
+    checkRadius(topLeft);
+    checkRadius(topRight);
+    checkRadius(bottomRight);
+    checkRadius(bottomLeft);
+
+    radii[Corner.TOP_LEFT] = topLeft;
+    radii[Corner.TOP_RIGHT] = topRight;
+    radii[Corner.BOTTOM_RIGHT] = bottomRight;
+    radii[Corner.BOTTOM_LEFT] = bottomLeft;
+    mRebuildPath = true;
+    mOpacity = PixelFormat.UNKNOWN;
+    mBorderRingLookups = 0;
     return this;
   }
 
+  private static void checkRadius(float radius) {
+    Radii.check(radius);
+  }
+
   public float getBorderWidth() {
-    return mBorderWidth;
+    return mState.mBorderWidth;
   }
 
   public RoundedDrawable setBorderWidth(float width) {
-    mBorderWidth = width;
-    mBorderPaint.setStrokeWidth(mBorderWidth);
+    if (mState.mBorderWidth != width) {
+      mState.mBorderWidth = width;
+      mBorderPaint.setStrokeWidth(width);
+      // the border insets the drawable rect
+      updateShaderMatrix();
+    }
     return this;
   }
 
   public int getBorderColor() {
-    return mBorderColor.getDefaultColor();
+    return mState.mBorderColor.getDefaultColor();
   }
 
   public RoundedDrawable setBorderColor(@ColorInt int color) {
@@ -547,46 +869,53 @@ public class RoundedDrawable extends Drawable {
   }
 
   public ColorStateList getBorderColors() {
-    return mBorderColor;
+    return mState.mBorderColor;
   }
 
   public RoundedDrawable setBorderColor(ColorStateList colors) {
-    mBorderColor = colors != null ? colors : ColorStateList.valueOf(0);
-    mBorderPaint.setColor(mBorderColor.getColorForState(getState(), DEFAULT_BORDER_COLOR));
+    if (colors != null && colors == mState.mBorderColor) {
+      return this;
+    }
+    mState.mBorderColor = colors != null ? colors : ColorStateList.valueOf(0);
+    mBorderPaint.setColor(mState.mBorderColor.getColorForState(getState(), DEFAULT_BORDER_COLOR));
+    mOpacity = PixelFormat.UNKNOWN;
+    mBorderRingLookups = 0;
     return this;
   }
 
   public boolean isOval() {
-    return mOval;
+    return mState.mOval;
   }
 
   public RoundedDrawable setOval(boolean oval) {
-    mOval = oval;
+    mState.mOval = oval;
+    mOpacity = PixelFormat.UNKNOWN;
+    mBorderRingLookups = 0;
     return this;
   }
 
   public ScaleType getScaleType() {
-    return mScaleType;
+    return mState.mScaleType;
   }
 
   public RoundedDrawable setScaleType(ScaleType scaleType) {
     if (scaleType == null) {
       scaleType = ScaleType.FIT_CENTER;
     }
-    if (mScaleType != scaleType) {
-      mScaleType = scaleType;
+    if (mState.mScaleType != scaleType) {
+      mState.mScaleType = scaleType;
       updateShaderMatrix();
     }
     return this;
   }
 
   public Shader.TileMode getTileModeX() {
-    return mTileModeX;
+    return mState.mTileModeX;
   }
 
   public RoundedDrawable setTileModeX(Shader.TileMode tileModeX) {
-    if (mTileModeX != tileModeX) {
-      mTileModeX = tileModeX;
+    if (mState.mTileModeX != tileModeX) {
+      mState.mTileModeX = tileModeX;
       mRebuildShader = true;
       invalidateSelf();
     }
@@ -594,42 +923,232 @@ public class RoundedDrawable extends Drawable {
   }
 
   public Shader.TileMode getTileModeY() {
-    return mTileModeY;
+    return mState.mTileModeY;
   }
 
   public RoundedDrawable setTileModeY(Shader.TileMode tileModeY) {
-    if (mTileModeY != tileModeY) {
-      mTileModeY = tileModeY;
+    if (mState.mTileModeY != tileModeY) {
+      mState.mTileModeY = tileModeY;
       mRebuildShader = true;
       invalidateSelf();
     }
     return this;
   }
 
-  private static boolean only(int index, boolean[] booleans) {
-    for (int i = 0, len = booleans.length; i < len; i++) {
-      if (booleans[i] != (i == index)) {
-        return false;
-      }
-    }
-    return true;
+  /**
+   * Applies all settings of a {@link RoundingSpec} at once.
+   *
+   * @param spec the spec.
+   * @return the {@link RoundedDrawable} for chaining.
+   */
+  public RoundedDrawable setRoundingSpec(RoundingSpec spec) {
+    return setScaleType(spec.getScaleType())
+        .setCornerRadius(
+            spec.getCornerRadius(Corner.TOP_LEFT),
+            spec.getCornerRadius(Corner.TOP_RIGHT),
+            spec.getCornerRadius(Corner.BOTTOM_RIGHT),
+            spec.getCornerRadius(Corner.BOTTOM_LEFT))
+        .setBorderWidth(spec.getBorderWidth())
+        .setBorderColor(spec.getBorderColors())
+        .setOval(spec.isOval())
+        .setTileModeX(spec.getTileModeX())
+        .setTileModeY(spec.getTileModeY());
   }
 
-  private static boolean any(boolean[] booleans) {
-    for (boolean b : booleans) {
-      if (b) { return true; }
-    }
-    return false;
+  /**
+   * @return the interned {@link RoundingSpec} describing this drawable's current settings.
+   */
+  public RoundingSpec getRoundingSpec() {
+    final RoundedState state = mState;
+    return new RoundingSpec.Builder()
+        .cornerRadius(
+            state.mCornerRadii[Corner.TOP_LEFT],
+            state.mCornerRadii[Corner.TOP_RIGHT],
+            state.mCornerRadii[Corner.BOTTOM_RIGHT],
+            state.mCornerRadii[Corner.BOTTOM_LEFT])
+        .borderWidth(state.mBorderWidth)
+        .borderColor(state.mBorderColor)
+        .oval(state.mOval)
+        .scaleType(state.mScaleType)
+        .tileModeX(state.mTileModeX)
+        .tileModeY(state.mTileModeY)
+        .build();
+  }
+
+  private static boolean uniform(float[] radii) {
+    return Radii.isUniform(radii);
   }
 
-  private static boolean all(boolean[] booleans) {
-    for (boolean b : booleans) {
-      if (b) { return false; }
+  static ScaleMode toScaleMode(ScaleType scaleType) {
+    switch (scaleType) {
+      case CENTER:
+        return ScaleMode.CENTER;
+      case CENTER_CROP:
+        return ScaleMode.CENTER_CROP;
+      case CENTER_INSIDE:
+        return ScaleMode.CENTER_INSIDE;
+      case FIT_END:
+        return ScaleMode.FIT_END;
+      case FIT_START:
+        return ScaleMode.FIT_START;
+      case FIT_XY:
+        return ScaleMode.FIT_XY;
+      default:
+        return ScaleMode.FIT_CENTER;
     }
-    return true;
   }
 
   public Bitmap toBitmap() {
     return drawableToBitmap(this);
   }
+
+  /**
+   * Renders this drawable with its scale type into a new bitmap of the given size. Unlike
+   * {@link #toBitmap()} the output keeps the source bitmap's config when the result has no
+   * transparent pixels, and the drawable's bounds are left untouched.
+   *
+   * @param width the width of the output in px.
+   * @param height the height of the output in px.
+   * @return the rendered bitmap, or null if it could not be allocated.
+   */
+  public Bitmap toBitmap(int width, int height) {
+    return toBitmap(width, height, sBitmapPool);
+  }
+
+  /**
+   * Like {@link #toBitmap(int, int)}, but takes the output bitmap from the given pool instead of
+   * the one set with {@link #setBitmapPool(BitmapPool)}, e.g. an image loader's own pool.
+   *
+   * @param width the width of the output in px.
+   * @param height the height of the output in px.
+   * @param pool the pool to take the output from, or null to allocate.
+   * @return the rendered bitmap, or null if it could not be allocated.
+   */
+  public Bitmap toBitmap(int width, int height, BitmapPool pool) {
+    Rect oldBounds = new Rect(getBounds());
+    setBounds(0, 0, width, height);
+
+    Bitmap bitmap;
+    try {
+      boolean opaque = !requiresAlpha();
+      bitmap = obtainBitmap(pool, width, height, opaque ? opaqueConfig() : Config.ARGB_8888);
+      if (opaque && Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB_MR1) {
+        bitmap.setHasAlpha(false);
+      }
+      if (RoundedMetrics.sEnabled) {
+        RoundedMetrics.onBitmapAllocated(bitmap);
+      }
+      draw(new Canvas(bitmap));
+    } catch (Throwable e) {
+      e.printStackTrace();
+      Log.w(TAG, "Failed to render RoundedDrawable to bitmap!");
+      bitmap = null;
+    }
+
+    setBounds(oldBounds);
+    return bitmap;
+  }
+
+  /**
+   * @return true if the current bounds can't be fully covered by opaque pixels.
+   */
+  private boolean requiresAlpha() {
+    final RoundedState state = mState;
+    final boolean sourceAlpha = state.mBitmap != null
+        ? state.mBitmap.hasAlpha() : Color.alpha(state.mColor) < 255;
+    if (sourceAlpha || mAlpha < 255 || state.mOval) {
+      return true;
+    }
+    for (float r : state.mCornerRadii) {
+      if (r > 0) { return true; }
+    }
+
+    // the shader clamps or repeats the bitmap over the whole drawable rect, the border stroke
+    // extends half its width beyond it
+    if (covers(mDrawableRect, 0)) {
+      return false;
+    }
+    return !(state.mBorderWidth > 0
+        && Color.alpha(mBorderPaint.getColor()) == 255
+        && covers(mDrawableRect, state.mBorderWidth / 2));
+  }
+
+  private boolean covers(RectF rect, float outset) {
+    return rect.left - outset <= mBounds.left
+        && rect.top - outset <= mBounds.top
+        && rect.right + outset >= mBounds.right
+        && rect.bottom + outset >= mBounds.bottom;
+  }
+
+  private Config opaqueConfig() {
+    Config config = mState.mBitmap != null ? mState.mBitmap.getConfig() : null;
+    return config == Config.RGB_565 ? Config.RGB_565 : Config.ARGB_8888;
+  }
+
+
+  /**
+   * Shared state for {@link RoundedDrawable}s showing the same bitmap with the same rounding spec.
+   * Instances created from one state share the source bitmap (and therefore its texture) and only
+   * allocate their own paints, shader and geometry.
+   */
+  static final class RoundedState extends ConstantState {
+    // null for solid colors
+    final Bitmap mBitmap;
+    final int mBitmapWidth;
+    final int mBitmapHeight;
+    final int mColor;
+
+    // [ topLeft, topRight, bottomRight, bottomLeft ], see Corner
+    final float[] mCornerRadii = new float[] { 0f, 0f, 0f, 0f };
+
+    boolean mOval = false;
+    float mBorderWidth = 0;
+    ColorStateList mBorderColor = ColorStateList.valueOf(DEFAULT_BORDER_COLOR);
+    ScaleType mScaleType = ScaleType.FIT_CENTER;
+    Shader.TileMode mTileModeX = Shader.TileMode.CLAMP;
+    Shader.TileMode mTileModeY = Shader.TileMode.CLAMP;
+    boolean mDownsample = false;
+    int mChangingConfigurations;
+
+    RoundedState(Bitmap bitmap) {
+      mBitmap = bitmap;
+      mBitmapWidth = bitmap.getWidth();
+      mBitmapHeight = bitmap.getHeight();
+      mColor = 0;
+    }
+
+    RoundedState(int color) {
+      mBitmap = null;
+      mBitmapWidth = -1;
+      mBitmapHeight = -1;
+      mColor = color;
+    }
+
+    RoundedState(RoundedState orig) {
+      mBitmap = orig.mBitmap;
+      mBitmapWidth = orig.mBitmapWidth;
+      mBitmapHeight = orig.mBitmapHeight;
+      mColor = orig.mColor;
+      System.arraycopy(orig.mCornerRadii, 0, mCornerRadii, 0, mCornerRadii.length);
+      mOval = orig.mOval;
+      mBorderWidth = orig.mBorderWidth;
+      mBorderColor = orig.mBorderColor;
+      mScaleType = orig.mScaleType;
+      mTileModeX = orig.mTileModeX;
+      mTileModeY = orig.mTileModeY;
+      mDownsample = orig.mDownsample;
+      mChangingConfigurations = orig.mChangingConfigurations;
+    }
+
+    @NonNull
+    @Override
+    public Drawable newDrawable() {
+      return new RoundedDrawable(this);
+    }
+
+    @Override
+    public int getChangingConfigurations() {
+      return mChangingConfigurations;
+    }
+  }
 }
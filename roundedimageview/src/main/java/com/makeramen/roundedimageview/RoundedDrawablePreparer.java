@@ -0,0 +1,295 @@
+/*
+* Copyright (C) 2017 Vincent Mi
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*      http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+
+package com.makeramen.roundedimageview;
+
+import android.graphics.drawable.Drawable;
+import android.graphics.drawable.LayerDrawable;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Prepares {@link RoundedDrawable}s on a small pool of background threads so that binding a row
+ * can attach a drawable whose conversion, shader and matrix are already done, instead of doing
+ * that work on the main thread inside the frame.
+ *
+ * <p>Use {@link #prepare} for a one-off drawable delivered to a {@link Callback}, or
+ * {@link #prefetch} from an adapter for upcoming positions and {@link #take} when they are bound.
+ */
+public class RoundedDrawablePreparer {
+
+  private static final int DEFAULT_MAX_PREFETCHED = 32;
+
+  private static RoundedDrawablePreparer sDefault;
+
+  /**
+   * Receives a prepared drawable on the main thread.
+   */
+  public interface Callback {
+    /**
+     * @param drawable the prepared drawable, a {@link RoundedDrawable} unless the source could not
+     *     be converted (for example a {@link LayerDrawable} whose layers were converted instead).
+     */
+    void onPrepared(Drawable drawable);
+  }
+
+  private final ThreadPoolExecutor mExecutor;
+  private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+  private final int mMaxPrefetched;
+  private final LinkedHashMap<Object, Future<Drawable>> mPrefetched =
+      new LinkedHashMap<>(16, 0.75f, true);
+
+  /**
+   * Creates a preparer with one background thread and room for 32 prefetched drawables.
+   */
+  public RoundedDrawablePreparer() {
+    this(1, DEFAULT_MAX_PREFETCHED);
+  }
+
+  /**
+   * @param threads the number of background threads.
+   * @param maxPrefetched the maximum number of prefetched drawables kept for {@link #take}, the
+   *     least recently requested ones are cancelled and dropped beyond that.
+   */
+  public RoundedDrawablePreparer(int threads, int maxPrefetched) {
+    if (threads < 1) {
+      throw new IllegalArgumentException("threads must be at least 1");
+    }
+    mMaxPrefetched = maxPrefetched;
+    mExecutor = new ThreadPoolExecutor(threads, threads, 1, TimeUnit.SECONDS,
+        new LinkedBlockingQueue<Runnable>(), new BackgroundThreadFactory());
+    mExecutor.allowCoreThreadTimeOut(true);
+  }
+
+  /**
+   * @return a preparer shared by the whole process, also used by {@link RoundedImageView} for
+   * async decoding. It is created on first use and never shut down.
+   */
+  public static synchronized RoundedDrawablePreparer getDefault() {
+    if (sDefault == null) {
+      sDefault = new RoundedDrawablePreparer();
+    }
+    return sDefault;
+  }
+
+  /**
+   * Prepares {@code source} in the background and delivers it to {@code callback} on the main
+   * thread, unless the returned future is cancelled first.
+   *
+   * @param source the drawable to convert, it is copied and not modified unless it has no
+   *     {@link Drawable.ConstantState}.
+   * @param spec the rounding to apply.
+   * @param width the width in px the drawable will be drawn at.
+   * @param height the height in px the drawable will be drawn at.
+   * @param callback receives the prepared drawable.
+   * @return a future that can be cancelled, for example when the row is recycled.
+   */
+  public Future<Drawable> prepare(Drawable source, RoundingSpec spec, int width, int height,
+      Callback callback) {
+    return submit(new PrepareTask(source, spec, width, height), callback);
+  }
+
+  /**
+   * Runs {@code task} in the background and delivers a non-null result to {@code callback} on the
+   * main thread, unless the returned future is cancelled first.
+   */
+  Future<Drawable> submit(Callable<Drawable> task, final Callback callback) {
+    final FutureTask<Drawable> future = new FutureTask<Drawable>(task) {
+      @Override protected void done() {
+        if (isCancelled()) {
+          return;
+        }
+        final FutureTask<Drawable> self = this;
+        mMainHandler.post(new Runnable() {
+          @Override public void run() {
+            Drawable prepared = getQuietly(self);
+            if (!self.isCancelled() && prepared != null) {
+              callback.onPrepared(prepared);
+            }
+          }
+        });
+      }
+    };
+    mExecutor.execute(future);
+    return future;
+  }
+
+  /**
+   * Starts preparing {@code source} for a position that is about to be bound. Does nothing if
+   * {@code key} is already being prefetched, or if {@code source} has no
+   * {@link Drawable.ConstantState} and can't be copied for the background thread, {@link #take}
+   * then misses and the caller converts it when binding.
+   *
+   * @param key identifies the item, typically its adapter position or stable id.
+   */
+  public void prefetch(Object key, Drawable source, RoundingSpec spec, int width, int height) {
+    if (source.getConstantState() == null) {
+      return;
+    }
+    synchronized (mPrefetched) {
+      if (mPrefetched.containsKey(key)) {
+        return;
+      }
+    }
+
+    // copy the source outside the lock so take() and cancelPrefetches() are never held up
+    FutureTask<Drawable> future =
+        new FutureTask<Drawable>(new PrepareTask(source, spec, width, height));
+    synchronized (mPrefetched) {
+      if (mPrefetched.containsKey(key)) {
+        return;
+      }
+      mPrefetched.put(key, future);
+      trimPrefetched();
+    }
+    mExecutor.execute(future);
+  }
+
+  /**
+   * Returns the drawable prefetched for {@code key} if it is ready. A prefetch that has not
+   * finished yet is cancelled, the caller should fall back to converting synchronously.
+   *
+   * @return the prepared drawable, or null if none is ready.
+   */
+  public Drawable take(Object key) {
+    Future<Drawable> future;
+    synchronized (mPrefetched) {
+      future = mPrefetched.remove(key);
+    }
+    if (future == null) {
+      return null;
+    }
+    if (!future.isDone()) {
+      future.cancel(false);
+      return null;
+    }
+    return getQuietly(future);
+  }
+
+  /**
+   * Cancels every pending prefetch, for example when the data set changes.
+   */
+  public void cancelPrefetches() {
+    synchronized (mPrefetched) {
+      for (Future<Drawable> future : mPrefetched.values()) {
+        future.cancel(false);
+      }
+      mPrefetched.clear();
+    }
+  }
+
+  /**
+   * Cancels all pending work and stops the background threads. The preparer can't be used after.
+   */
+  public void shutdown() {
+    cancelPrefetches();
+    mExecutor.shutdownNow();
+  }
+
+  private void trimPrefetched() {
+    Iterator<Map.Entry<Object, Future<Drawable>>> it = mPrefetched.entrySet().iterator();
+    while (mPrefetched.size() > mMaxPrefetched && it.hasNext()) {
+      it.next().getValue().cancel(false);
+      it.remove();
+    }
+  }
+
+  private static Drawable getQuietly(Future<Drawable> future) {
+    try {
+      return future.get();
+    } catch (Exception e) {
+      return null;
+    }
+  }
+
+  /**
+   * Converts {@code drawable}, which must not be used by any other thread.
+   */
+  static Drawable prepare(Drawable drawable, RoundingSpec spec, int width, int height) {
+    Drawable converted = RoundedDrawable.fromDrawable(drawable);
+    if (converted instanceof RoundedDrawable) {
+      RoundedDrawable rd = ((RoundedDrawable) converted).setRoundingSpec(spec);
+      rd.setBounds(0, 0, width, height);
+      rd.prepareToDraw();
+    } else if (converted instanceof LayerDrawable) {
+      LayerDrawable ld = (LayerDrawable) converted;
+      for (int i = 0; i < ld.getNumberOfLayers(); i++) {
+        Drawable layer = ld.getDrawable(i);
+        if (layer instanceof RoundedDrawable) {
+          ((RoundedDrawable) layer).setRoundingSpec(spec);
+        }
+      }
+      ld.setBounds(0, 0, width, height);
+    }
+    return converted;
+  }
+
+  /**
+   * Copies the source on the caller's thread so the worker never touches state the caller's
+   * drawable still uses. A {@code newDrawable()} copy of a vector, state list etc. shares mutable
+   * state with the original until it is mutated. Drawables without a constant state can't be
+   * copied and are converted right away on the caller's thread instead, {@link #prefetch} never
+   * passes those.
+   */
+  private static final class PrepareTask implements Callable<Drawable> {
+    private final Drawable mCopy;
+    private final Drawable mPrepared;
+    private final RoundingSpec mSpec;
+    private final int mWidth;
+    private final int mHeight;
+
+    PrepareTask(Drawable source, RoundingSpec spec, int width, int height) {
+      Drawable.ConstantState cs = source.getConstantState();
+      mCopy = cs != null ? cs.newDrawable().mutate() : null;
+      mPrepared = cs == null ? prepare(source, spec, width, height) : null;
+      mSpec = spec;
+      mWidth = width;
+      mHeight = height;
+    }
+
+    @Override public Drawable call() {
+      return mCopy != null ? prepare(mCopy, mSpec, mWidth, mHeight) : mPrepared;
+    }
+  }
+
+  private static final class BackgroundThreadFactory implements ThreadFactory {
+    private final AtomicInteger mCount = new AtomicInteger();
+
+    @Override public Thread newThread(final Runnable r) {
+      Thread thread = new Thread(new Runnable() {
+        @Override public void run() {
+          Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+          r.run();
+        }
+      }, "RoundedDrawablePreparer-" + mCount.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    }
+  }
+}
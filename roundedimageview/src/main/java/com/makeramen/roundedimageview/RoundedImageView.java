@@ -16,47 +16,50 @@
 
 package com.makeramen.roundedimageview;
 
+import android.content.ContentResolver;
 import android.content.Context;
 import android.content.res.ColorStateList;
 import android.content.res.Resources;
-import android.content.res.TypedArray;
 import android.graphics.Bitmap;
+import android.graphics.Canvas;
 import android.graphics.ColorFilter;
+import android.graphics.PixelFormat;
+import android.graphics.Rect;
+import android.graphics.RectF;
 import android.graphics.Shader;
+import android.graphics.drawable.BitmapDrawable;
 import android.graphics.drawable.ColorDrawable;
 import android.graphics.drawable.Drawable;
 import android.graphics.drawable.LayerDrawable;
 import android.net.Uri;
+import android.os.Build;
 import android.support.annotation.ColorInt;
 import android.support.annotation.DimenRes;
 import android.support.annotation.DrawableRes;
 import android.util.AttributeSet;
 import android.util.Log;
+import android.view.View;
 import android.widget.ImageView;
+import java.util.concurrent.Callable;
 
 @SuppressWarnings("UnusedDeclaration")
 public class RoundedImageView extends ImageView {
 
-  // Constants for tile mode attributes
-  private static final int TILE_MODE_UNDEFINED = -2;
-  private static final int TILE_MODE_CLAMP = 0;
-  private static final int TILE_MODE_REPEAT = 1;
-  private static final int TILE_MODE_MIRROR = 2;
-
   public static final String TAG = "RoundedImageView";
   public static final float DEFAULT_RADIUS = 0f;
   public static final float DEFAULT_BORDER_WIDTH = 0f;
   public static final Shader.TileMode DEFAULT_TILE_MODE = Shader.TileMode.CLAMP;
-  private static final ScaleType[] SCALE_TYPES = {
-      ScaleType.MATRIX,
-      ScaleType.FIT_XY,
-      ScaleType.FIT_START,
-      ScaleType.FIT_CENTER,
-      ScaleType.FIT_END,
-      ScaleType.CENTER,
-      ScaleType.CENTER_CROP,
-      ScaleType.CENTER_INSIDE
-  };
+
+  // Bits for the attributes that changed and need to be pushed to the drawables
+  private static final int ATTR_SCALE_TYPE = 1;
+  private static final int ATTR_BORDER_WIDTH = 1 << 1;
+  private static final int ATTR_BORDER_COLOR = 1 << 2;
+  private static final int ATTR_OVAL = 1 << 3;
+  private static final int ATTR_TILE_MODE = 1 << 4;
+  private static final int ATTR_CORNER_RADII = 1 << 5;
+  private static final int ATTR_DOWNSAMPLE = 1 << 6;
+  private static final int ATTR_ALL = ATTR_SCALE_TYPE | ATTR_BORDER_WIDTH | ATTR_BORDER_COLOR
+      | ATTR_OVAL | ATTR_TILE_MODE | ATTR_CORNER_RADII | ATTR_DOWNSAMPLE;
 
   private final float[] mCornerRadii =
       new float[] { DEFAULT_RADIUS, DEFAULT_RADIUS, DEFAULT_RADIUS, DEFAULT_RADIUS };
@@ -65,9 +68,27 @@ public class RoundedImageView extends ImageView {
   private ColorStateList mBorderColor =
       ColorStateList.valueOf(RoundedDrawable.DEFAULT_BORDER_COLOR);
   private float mBorderWidth = DEFAULT_BORDER_WIDTH;
+  private boolean mClipToOutline = false;
   private ColorFilter mColorFilter = null;
   private boolean mColorMod = false;
+  private boolean mAsyncDecode = false;
+  private boolean mReleaseOnDetach = false;
+  private boolean mFixedSize = false;
+  // attribute changes deferred until the outermost endBatchEdit()
+  private int mBatchEditNesting;
+  private int mPendingAttrs;
+  private boolean mPendingInvalidate;
+  // set while swapping drawables that can't change the measured size
+  private boolean mBlockLayout;
+  // bumped by every setImage* call so a decode finishing late is never shown, read by the decoder
+  private volatile int mDecodeGeneration;
+  private boolean mDelegateDrawables = false;
+  private boolean mDownsample = false;
   private Drawable mDrawable;
+  private Drawable mSourceDrawable;
+  // no initializers, ImageView's constructor sets the src drawable before they would run
+  private boolean mSourceFromResources;
+  private boolean mConstructed;
   private boolean mHasColorFilter = false;
   private boolean mIsOval = false;
   private boolean mMutateBackground = false;
@@ -76,9 +97,14 @@ public class RoundedImageView extends ImageView {
   private ScaleType mScaleType;
   private Shader.TileMode mTileModeX = DEFAULT_TILE_MODE;
   private Shader.TileMode mTileModeY = DEFAULT_TILE_MODE;
+  private boolean mUsingOutline = false;
 
   public RoundedImageView(Context context) {
     super(context);
+    // ImageView(Context) never calls setScaleType(), match the default of the xml constructors
+    mScaleType = ScaleType.FIT_CENTER;
+    updateSuperScaleType();
+    mConstructed = true;
   }
 
   public RoundedImageView(Context context, AttributeSet attrs) {
@@ -88,99 +114,133 @@ public class RoundedImageView extends ImageView {
   public RoundedImageView(Context context, AttributeSet attrs, int defStyle) {
     super(context, attrs, defStyle);
 
-    TypedArray a = context.obtainStyledAttributes(attrs, R.styleable.RoundedImageView, defStyle, 0);
-
-    int index = a.getInt(R.styleable.RoundedImageView_android_scaleType, -1);
-    if (index >= 0) {
-      setScaleType(SCALE_TYPES[index]);
+    ParsedAttributes parsed = ParsedAttributes.obtain(context, attrs, defStyle);
+    // only assign the fields, the drawables are updated once below
+    readRoundingSpec(parsed.mSpec);
+    mMutateBackground = parsed.mMutateBackground;
+    mClipToOutline = parsed.mClipToOutline;
+    mDownsample = parsed.mDownsample;
+    mAsyncDecode = parsed.mAsyncDecode;
+    mReleaseOnDetach = parsed.mReleaseOnDetach;
+    mFixedSize = parsed.mFixedSize;
+    mDelegateDrawables = parsed.mDelegateDrawables;
+
+    if (mDelegateDrawables) {
+      // the src drawable was already converted by ImageView's constructor
+      reconvertDrawable();
     } else {
-      // default scaletype to FIT_CENTER
-      setScaleType(ScaleType.FIT_CENTER);
+      updateDrawableAttrs();
     }
+    updateBackgroundDrawableAttrs(true);
+    updateRenderMode();
 
-    float cornerRadiusOverride =
-        a.getDimensionPixelSize(R.styleable.RoundedImageView_riv_corner_radius, -1);
+    if (mMutateBackground) {
+      //noinspection deprecation
+      super.setBackgroundDrawable(mBackgroundDrawable);
+    }
+    mConstructed = true;
+  }
 
-    mCornerRadii[Corner.TOP_LEFT] =
-        a.getDimensionPixelSize(R.styleable.RoundedImageView_riv_corner_radius_top_left, -1);
-    mCornerRadii[Corner.TOP_RIGHT] =
-        a.getDimensionPixelSize(R.styleable.RoundedImageView_riv_corner_radius_top_right, -1);
-    mCornerRadii[Corner.BOTTOM_RIGHT] =
-        a.getDimensionPixelSize(R.styleable.RoundedImageView_riv_corner_radius_bottom_right, -1);
-    mCornerRadii[Corner.BOTTOM_LEFT] =
-        a.getDimensionPixelSize(R.styleable.RoundedImageView_riv_corner_radius_bottom_left, -1);
+  @Override
+  protected void onAttachedToWindow() {
+    super.onAttachedToWindow();
+    restoreDrawable();
+  }
 
-    boolean any = false;
-    for (int i = 0, len = mCornerRadii.length; i < len; i++) {
-      if (mCornerRadii[i] < 0) {
-        mCornerRadii[i] = 0f;
-      } else {
-        any = true;
-      }
+  @Override
+  protected void onDetachedFromWindow() {
+    super.onDetachedFromWindow();
+    if (mReleaseOnDetach) {
+      releaseDrawable();
     }
+  }
 
-    if (!any) {
-      if (cornerRadiusOverride < 0) {
-        cornerRadiusOverride = DEFAULT_RADIUS;
-      }
-      for (int i = 0, len = mCornerRadii.length; i < len; i++) {
-        mCornerRadii[i] = cornerRadiusOverride;
+  @Override
+  protected void onVisibilityChanged(View changedView, int visibility) {
+    super.onVisibilityChanged(changedView, visibility);
+    if (mReleaseOnDetach && changedView == this) {
+      if (visibility == GONE) {
+        releaseDrawable();
+      } else if (getWindowToken() != null) {
+        restoreDrawable();
       }
     }
+  }
 
-    mBorderWidth = a.getDimensionPixelSize(R.styleable.RoundedImageView_riv_border_width, -1);
-    if (mBorderWidth < 0) {
-      mBorderWidth = DEFAULT_BORDER_WIDTH;
-    }
-
-    mBorderColor = a.getColorStateList(R.styleable.RoundedImageView_riv_border_color);
-    if (mBorderColor == null) {
-      mBorderColor = ColorStateList.valueOf(RoundedDrawable.DEFAULT_BORDER_COLOR);
+  /**
+   * Drops the converted drawable along with its shader and bitmaps while keeping the source, so
+   * {@link #restoreDrawable()} can convert it again.
+   *
+   * @return the bytes of bitmaps that are no longer referenced by this view.
+   */
+  private int releaseDrawable() {
+    if (mDrawable == null || mDrawable == getSourceDrawable() || mSourceDrawable == null) {
+      // nothing was converted, or there is nothing to restore it from
+      return 0;
     }
 
-    mMutateBackground = a.getBoolean(R.styleable.RoundedImageView_riv_mutate_background, false);
-    mIsOval = a.getBoolean(R.styleable.RoundedImageView_riv_oval, false);
-
-    final int tileMode = a.getInt(R.styleable.RoundedImageView_riv_tile_mode, TILE_MODE_UNDEFINED);
-    if (tileMode != TILE_MODE_UNDEFINED) {
-      setTileModeX(parseTileMode(tileMode));
-      setTileModeY(parseTileMode(tileMode));
+    int bytes = 0;
+    if (mDrawable instanceof RoundedDrawable) {
+      RoundedDrawable drawable = (RoundedDrawable) mDrawable;
+      bytes = drawable.releaseCaches();
+      Bitmap bitmap = drawable.getSourceBitmap();
+      if (bitmap != null && !(mSourceDrawable instanceof BitmapDrawable)
+          && (!mSourceFromResources || RoundedDrawable.getConversionCache() == null)) {
+        // rasterized for this view alone, not shared through the conversion cache. It is left to
+        // the garbage collector rather than pooled since callers of getDrawable() may still hold
+        // on to it, so it is only counted as no longer referenced by this view.
+        bytes += LruBitmapPool.byteCount(bitmap);
+      }
     }
-
-    final int tileModeX =
-        a.getInt(R.styleable.RoundedImageView_riv_tile_mode_x, TILE_MODE_UNDEFINED);
-    if (tileModeX != TILE_MODE_UNDEFINED) {
-      setTileModeX(parseTileMode(tileModeX));
+    mDrawable = null;
+    // the release is temporary and must not change the measured size
+    swapDrawable(null, true);
+    if (RoundedMetrics.sEnabled) {
+      RoundedMetrics.onBytesReleased(bytes);
     }
+    return bytes;
+  }
 
-    final int tileModeY =
-        a.getInt(R.styleable.RoundedImageView_riv_tile_mode_y, TILE_MODE_UNDEFINED);
-    if (tileModeY != TILE_MODE_UNDEFINED) {
-      setTileModeY(parseTileMode(tileModeY));
+  private void restoreDrawable() {
+    if (mDrawable == null && mSourceDrawable != null) {
+      // converting the same source again gives the size the view was last measured with
+      mDrawable = mUsingOutline
+          ? mSourceDrawable : convert(mSourceDrawable, mSourceFromResources);
+      updateDrawableAttrs();
+      swapDrawable(mDrawable, true);
     }
+  }
 
-    updateDrawableAttrs();
-    updateBackgroundDrawableAttrs(true);
+  @Override
+  public boolean isOpaque() {
+    return imageCoversView() || super.isOpaque();
+  }
 
-    if (mMutateBackground) {
-      //noinspection deprecation
-      super.setBackgroundDrawable(mBackgroundDrawable);
+  @Override
+  public void draw(Canvas canvas) {
+    if (mMutateBackground && mBackgroundDrawable instanceof RoundedDrawable) {
+      // a background completely hidden by the image is pure overdraw
+      ((RoundedDrawable) mBackgroundDrawable).setSkipDraw(imageCoversView());
     }
-
-    a.recycle();
+    super.draw(canvas);
   }
 
-  private static Shader.TileMode parseTileMode(int tileMode) {
-    switch (tileMode) {
-      case TILE_MODE_CLAMP:
-        return Shader.TileMode.CLAMP;
-      case TILE_MODE_REPEAT:
-        return Shader.TileMode.REPEAT;
-      case TILE_MODE_MIRROR:
-        return Shader.TileMode.MIRROR;
-      default:
-        return null;
+  /**
+   * @return true if the image is a {@link RoundedDrawable} whose opaque pixels cover the whole
+   * view.
+   */
+  private boolean imageCoversView() {
+    if (mUsingOutline || !(mDrawable instanceof RoundedDrawable) || getDrawable() != mDrawable) {
+      return false;
     }
+    if (getPaddingLeft() != 0 || getPaddingTop() != 0
+        || getPaddingRight() != 0 || getPaddingBottom() != 0) {
+      return false;
+    }
+    Rect bounds = mDrawable.getBounds();
+    return bounds.left <= 0 && bounds.top <= 0
+        && bounds.right >= getWidth() && bounds.bottom >= getHeight()
+        && mDrawable.getOpacity() == PixelFormat.OPAQUE;
   }
 
   @Override
@@ -200,59 +260,189 @@ public class RoundedImageView extends ImageView {
 
     if (mScaleType != scaleType) {
       mScaleType = scaleType;
+      updateSuperScaleType();
+      applyAttrs(ATTR_SCALE_TYPE);
+    }
+  }
 
-      switch (scaleType) {
-        case CENTER:
-        case CENTER_CROP:
-        case CENTER_INSIDE:
-        case FIT_CENTER:
-        case FIT_START:
-        case FIT_END:
-        case FIT_XY:
-          super.setScaleType(ScaleType.FIT_XY);
-          break;
-        default:
-          super.setScaleType(scaleType);
-          break;
-      }
-
-      updateDrawableAttrs();
-      updateBackgroundDrawableAttrs(false);
-      invalidate();
+  private void updateSuperScaleType() {
+    switch (mScaleType) {
+      case CENTER:
+      case CENTER_CROP:
+      case CENTER_INSIDE:
+      case FIT_CENTER:
+      case FIT_START:
+      case FIT_END:
+      case FIT_XY:
+        // RoundedDrawable does its own scaling, an outline clipped drawable is scaled by ImageView
+        super.setScaleType(mUsingOutline ? mScaleType : ScaleType.FIT_XY);
+        break;
+      default:
+        super.setScaleType(mScaleType);
+        break;
     }
   }
 
   @Override
   public void setImageDrawable(Drawable drawable) {
+    cancelDecode();
     mResource = 0;
-    mDrawable = RoundedDrawable.fromDrawable(drawable);
+    mSourceDrawable = drawable;
+    // only ImageView's constructor sets a drawable before ours is done, the one from android:src
+    mSourceFromResources = !mConstructed;
+    mDrawable = mUsingOutline ? drawable : convert(drawable, mSourceFromResources);
     updateDrawableAttrs();
-    super.setImageDrawable(mDrawable);
+    swapDrawable(mDrawable);
+    invalidateRoundedOutline();
   }
 
   @Override
   public void setImageBitmap(Bitmap bm) {
+    cancelDecode();
     mResource = 0;
-    mDrawable = RoundedDrawable.fromBitmap(bm);
+    // the source is only wrapped if the render mode changes, see getSourceDrawable()
+    mSourceDrawable = null;
+    mSourceFromResources = false;
+    mDrawable = mUsingOutline && bm != null
+        ? new BitmapDrawable(getResources(), bm) : RoundedDrawable.fromBitmap(bm);
     updateDrawableAttrs();
-    super.setImageDrawable(mDrawable);
+    swapDrawable(mDrawable);
+    invalidateRoundedOutline();
   }
 
   @Override
   public void setImageResource(@DrawableRes int resId) {
     if (mResource != resId) {
+      cancelDecode();
       mResource = resId;
-      mDrawable = resolveResource();
+      if (mAsyncDecode && resId != 0
+          && SubsampledDecoder.isBitmapResource(getResources(), resId)) {
+        decodeAsync(resId, null);
+        return;
+      }
+      mSourceDrawable = resolveResource();
+      mSourceFromResources = true;
+      mDrawable = mUsingOutline
+          ? mSourceDrawable : convert(mSourceDrawable, mSourceFromResources);
       updateDrawableAttrs();
-      super.setImageDrawable(mDrawable);
+      swapDrawable(mDrawable);
+      invalidateRoundedOutline();
     }
   }
 
   @Override public void setImageURI(Uri uri) {
-    super.setImageURI(uri);
+    if (mAsyncDecode && uri != null) {
+      cancelDecode();
+      mResource = 0;
+      decodeAsync(0, uri);
+      return;
+    }
+    mBlockLayout = mFixedSize;
+    try {
+      super.setImageURI(uri);
+    } finally {
+      mBlockLayout = false;
+    }
     setImageDrawable(getDrawable());
   }
 
+  /**
+   * Clears the image and decodes a bitmap resource or uri in the background, subsampled to the
+   * view's size, showing it once ready unless another image was set in the meantime.
+   */
+  private void decodeAsync(final int resId, final Uri uri) {
+    final int generation = mDecodeGeneration;
+    mSourceDrawable = null;
+    mDrawable = null;
+    swapDrawable(null);
+
+    final Resources res = getResources();
+    final ContentResolver resolver = getContext().getContentResolver();
+    int width = getWidth() - getPaddingLeft() - getPaddingRight();
+    int height = getHeight() - getPaddingTop() - getPaddingBottom();
+    if (width <= 0 || height <= 0) {
+      // not laid out yet, don't decode larger than the screen
+      width = res.getDisplayMetrics().widthPixels;
+      height = res.getDisplayMetrics().heightPixels;
+    }
+    final int reqWidth = width;
+    final int reqHeight = height;
+
+    // superseded decodes are never cancelled through their future, a running one would drop its
+    // result and the pooled bitmap it decoded into. They skip the work or release the bitmap.
+    RoundedDrawablePreparer.getDefault().submit(new Callable<Drawable>() {
+      @Override public Drawable call() throws Exception {
+        if (generation != mDecodeGeneration) {
+          return null;
+        }
+        try {
+          Bitmap bitmap = uri != null
+              ? SubsampledDecoder.decodeUri(resolver, uri, reqWidth, reqHeight)
+              : SubsampledDecoder.decodeResource(res, resId, reqWidth, reqHeight);
+          if (bitmap != null && generation != mDecodeGeneration) {
+            RoundedDrawable.releaseBitmap(bitmap);
+            return null;
+          }
+          return bitmap != null ? new BitmapDrawable(res, bitmap) : null;
+        } catch (Exception e) {
+          Log.w(TAG, "Unable to decode " + (uri != null ? uri : "resource: " + resId), e);
+          throw e;
+        }
+      }
+    }, new RoundedDrawablePreparer.Callback() {
+      @Override public void onPrepared(Drawable drawable) {
+        if (generation != mDecodeGeneration) {
+          // superseded while it was being delivered
+          RoundedDrawable.releaseBitmap(((BitmapDrawable) drawable).getBitmap());
+          return;
+        }
+        mSourceDrawable = drawable;
+        mSourceFromResources = false;
+        mDrawable = mUsingOutline ? drawable : convert(drawable, false);
+        updateDrawableAttrs();
+        swapDrawable(mDrawable);
+        invalidateRoundedOutline();
+      }
+    });
+  }
+
+  /**
+   * Sets {@code drawable} on the ImageView without requesting a layout pass when it can't change
+   * the measured size: the view has a fixed size, or the drawable has the same intrinsic size as
+   * the current one. ImageView still configures its bounds, which updates the shader matrix, and
+   * invalidates.
+   */
+  private void swapDrawable(Drawable drawable) {
+    swapDrawable(drawable, false);
+  }
+
+  /**
+   * @param keepSize true to never request a layout pass, for swaps that can't change the size the
+   *     view was measured with.
+   */
+  private void swapDrawable(Drawable drawable, boolean keepSize) {
+    Drawable current = getDrawable();
+    mBlockLayout = keepSize || mFixedSize || (current != null && drawable != null
+        && current.getIntrinsicWidth() == drawable.getIntrinsicWidth()
+        && current.getIntrinsicHeight() == drawable.getIntrinsicHeight());
+    try {
+      super.setImageDrawable(drawable);
+    } finally {
+      mBlockLayout = false;
+    }
+  }
+
+  @Override
+  public void requestLayout() {
+    if (!mBlockLayout) {
+      super.requestLayout();
+    }
+  }
+
+  private void cancelDecode() {
+    mDecodeGeneration++;
+  }
+
   private Drawable resolveResource() {
     Resources rsrc = getResources();
     if (rsrc == null) { return null; }
@@ -268,7 +458,7 @@ public class RoundedImageView extends ImageView {
         mResource = 0;
       }
     }
-    return RoundedDrawable.fromDrawable(d);
+    return d;
   }
 
   @Override
@@ -306,19 +496,192 @@ public class RoundedImageView extends ImageView {
         mBackgroundResource = 0;
       }
     }
-    return RoundedDrawable.fromDrawable(d);
+    return convert(d, true);
+  }
+
+  /**
+   * @param fromResources true if {@code drawable} was just loaded from resources, so it may go
+   *     through the {@link ConversionCache}.
+   */
+  private Drawable convert(Drawable drawable, boolean fromResources) {
+    return RoundedDrawable.fromDrawable(drawable, mDelegateDrawables, fromResources);
   }
 
   private void updateDrawableAttrs() {
-    updateAttrs(mDrawable, mScaleType);
+    updateAttrs(mDrawable, mScaleType, ATTR_ALL);
+    if (mUsingOutline) {
+      applyColorMod();
+    }
   }
 
   private void updateBackgroundDrawableAttrs(boolean convert) {
     if (mMutateBackground) {
       if (convert) {
-        mBackgroundDrawable = RoundedDrawable.fromDrawable(mBackgroundDrawable);
+        mBackgroundDrawable = convert(mBackgroundDrawable, false);
       }
-      updateAttrs(mBackgroundDrawable, ScaleType.FIT_XY);
+      updateAttrs(mBackgroundDrawable, ScaleType.FIT_XY, ATTR_ALL);
+    }
+  }
+
+  /**
+   * Defers pushing attribute changes to the drawables and redrawing until the matching
+   * {@link #endBatchEdit()}, so binding several properties walks the drawables and invalidates
+   * once. Calls may be nested.
+   *
+   * <pre>
+   * view.beginBatchEdit();
+   * view.setCornerRadius(radius);
+   * view.setBorderWidth(width);
+   * view.setBorderColor(color);
+   * view.endBatchEdit();
+   * </pre>
+   */
+  public void beginBatchEdit() {
+    mBatchEditNesting++;
+  }
+
+  /**
+   * Applies all attribute changes made since the outermost {@link #beginBatchEdit()} in one pass.
+   */
+  public void endBatchEdit() {
+    if (mBatchEditNesting == 0) {
+      throw new IllegalStateException("endBatchEdit() without beginBatchEdit()");
+    }
+    if (--mBatchEditNesting == 0 && mPendingAttrs != 0) {
+      int attrs = mPendingAttrs;
+      boolean invalidate = mPendingInvalidate;
+      mPendingAttrs = 0;
+      mPendingInvalidate = false;
+      applyAttrs(attrs, invalidate);
+    }
+  }
+
+  private void applyAttrs(int attrs) {
+    applyAttrs(attrs, true);
+  }
+
+  /**
+   * Pushes the changed attributes to the drawables and redraws, unless a batch edit is open.
+   *
+   * @param attrs the ATTR_* bits that changed.
+   * @param invalidate whether the change is visible.
+   */
+  private void applyAttrs(int attrs, boolean invalidate) {
+    if (mBatchEditNesting > 0) {
+      mPendingAttrs |= attrs;
+      mPendingInvalidate |= invalidate;
+      return;
+    }
+    updateAttrs(attrs);
+    if (invalidate) {
+      invalidate();
+    }
+  }
+
+  /**
+   * Pushes only the changed attributes to the image and (if mutated) background drawables.
+   *
+   * @param attrs the ATTR_* bits that changed.
+   */
+  private void updateAttrs(int attrs) {
+    updateRenderMode();
+    updateAttrs(mDrawable, mScaleType, attrs);
+    if (mMutateBackground) {
+      updateAttrs(mBackgroundDrawable, ScaleType.FIT_XY, attrs);
+    }
+  }
+
+  /**
+   * @return true if the current attributes can be rendered by clipping the unmodified drawable to
+   * the view outline instead of converting it to a {@link RoundedDrawable}.
+   */
+  private boolean canUseOutline() {
+    if (!mClipToOutline || Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP) {
+      return false;
+    }
+    if (mBorderWidth > 0 || mBackgroundDrawable != null || mScaleType == ScaleType.MATRIX) {
+      // borders are drawn by RoundedDrawable and the outline would clip the background too
+      return false;
+    }
+    if (mTileModeX != Shader.TileMode.CLAMP || mTileModeY != Shader.TileMode.CLAMP) {
+      return false;
+    }
+    if (mIsOval) {
+      return true;
+    }
+    // Outline can only clip to a round rect with a single radius
+    for (float r : mCornerRadii) {
+      if (r != mCornerRadii[0]) { return false; }
+    }
+    return true;
+  }
+
+  private void updateRenderMode() {
+    boolean useOutline = canUseOutline();
+    if (useOutline == mUsingOutline) {
+      invalidateRoundedOutline();
+      return;
+    }
+
+    mUsingOutline = useOutline;
+    RoundedOutlineProvider.install(this, useOutline);
+    updateSuperScaleType();
+    reconvertDrawable();
+  }
+
+  /**
+   * Converts the source drawable again after the render mode or conversion settings changed.
+   */
+  private void reconvertDrawable() {
+    Drawable source = getSourceDrawable();
+    if (source != null) {
+      mDrawable = mUsingOutline ? source : convert(source, mSourceFromResources);
+      updateDrawableAttrs();
+      swapDrawable(mDrawable);
+    }
+  }
+
+  private Drawable getSourceDrawable() {
+    if (mSourceDrawable == null && mDrawable instanceof RoundedDrawable) {
+      // set with setImageBitmap()
+      mSourceDrawable =
+          new BitmapDrawable(getResources(), ((RoundedDrawable) mDrawable).getSourceBitmap());
+    }
+    return mSourceDrawable;
+  }
+
+  @Override
+  protected boolean setFrame(int l, int t, int r, int b) {
+    boolean changed = super.setFrame(l, t, r, b);
+    // View rebuilds the outline before ImageView configures the drawable bounds it depends on
+    if (changed) {
+      invalidateRoundedOutline();
+    }
+    return changed;
+  }
+
+  private void invalidateRoundedOutline() {
+    if (mUsingOutline) {
+      RoundedOutlineProvider.invalidate(this);
+    }
+  }
+
+  /**
+   * Computes the rect the image is drawn in when clipping to the outline, relative to the view.
+   */
+  void getImageRect(RectF out) {
+    Drawable d = getDrawable();
+    if (d == null) {
+      out.setEmpty();
+      return;
+    }
+    out.set(d.getBounds());
+    getImageMatrix().mapRect(out);
+    out.offset(getPaddingLeft(), getPaddingTop());
+    // RoundedDrawable never draws outside of the padding, so don't clip any wider than that
+    if (!out.intersect(getPaddingLeft(), getPaddingTop(),
+        getWidth() - getPaddingRight(), getHeight() - getPaddingBottom())) {
+      out.setEmpty();
     }
   }
 
@@ -347,32 +710,74 @@ public class RoundedImageView extends ImageView {
     }
   }
 
-  private void updateAttrs(Drawable drawable, ScaleType scaleType) {
+  private void updateAttrs(Drawable drawable, ScaleType scaleType, int attrs) {
     if (drawable == null) { return; }
 
     if (drawable instanceof RoundedDrawable) {
-      ((RoundedDrawable) drawable)
-              .setScaleType(scaleType)
-              .setBorderWidth(mBorderWidth)
-              .setBorderColor(mBorderColor)
-              .setOval(mIsOval)
-              .setTileModeX(mTileModeX)
-              .setTileModeY(mTileModeY);
-
-      if (mCornerRadii != null) {
-        ((RoundedDrawable) drawable).setCornerRadius(
+      // don't let per-view attrs leak into drawables sharing the same ConstantState
+      drawable.mutate();
+      RoundedDrawable rd = (RoundedDrawable) drawable;
+      if ((attrs & ATTR_SCALE_TYPE) != 0) {
+        rd.setScaleType(scaleType);
+      }
+      if ((attrs & ATTR_BORDER_WIDTH) != 0) {
+        rd.setBorderWidth(mBorderWidth);
+      }
+      if ((attrs & ATTR_BORDER_COLOR) != 0) {
+        rd.setBorderColor(mBorderColor);
+      }
+      if ((attrs & ATTR_OVAL) != 0) {
+        rd.setOval(mIsOval);
+      }
+      if ((attrs & ATTR_TILE_MODE) != 0) {
+        rd.setTileModeX(mTileModeX);
+        rd.setTileModeY(mTileModeY);
+      }
+      // mCornerRadii is still null when ImageView's constructor sets the src drawable
+      if ((attrs & ATTR_CORNER_RADII) != 0 && mCornerRadii != null) {
+        rd.setCornerRadius(
             mCornerRadii[Corner.TOP_LEFT],
             mCornerRadii[Corner.TOP_RIGHT],
             mCornerRadii[Corner.BOTTOM_RIGHT],
             mCornerRadii[Corner.BOTTOM_LEFT]);
       }
+      if ((attrs & ATTR_DOWNSAMPLE) != 0) {
+        rd.setDownsample(mDownsample);
+      }
 
-      applyColorMod();
+      if (attrs == ATTR_ALL) {
+        applyColorMod();
+      }
+    } else if (drawable instanceof RoundedDelegateDrawable) {
+      RoundedDelegateDrawable rd = (RoundedDelegateDrawable) drawable;
+      if ((attrs & ATTR_SCALE_TYPE) != 0) {
+        rd.setScaleType(scaleType);
+      }
+      if ((attrs & ATTR_BORDER_WIDTH) != 0) {
+        rd.setBorderWidth(mBorderWidth);
+      }
+      if ((attrs & ATTR_BORDER_COLOR) != 0) {
+        rd.setBorderColor(mBorderColor);
+      }
+      if ((attrs & ATTR_OVAL) != 0) {
+        rd.setOval(mIsOval);
+      }
+      if ((attrs & ATTR_CORNER_RADII) != 0 && mCornerRadii != null) {
+        rd.setCornerRadius(
+            mCornerRadii[Corner.TOP_LEFT],
+            mCornerRadii[Corner.TOP_RIGHT],
+            mCornerRadii[Corner.BOTTOM_RIGHT],
+            mCornerRadii[Corner.BOTTOM_LEFT]);
+      }
+
+      if (attrs == ATTR_ALL) {
+        applyColorMod();
+      }
     } else if (drawable instanceof LayerDrawable) {
       // loop through layers to and set drawable attrs
       LayerDrawable ld = ((LayerDrawable) drawable);
       for (int i = 0, layers = ld.getNumberOfLayers(); i < layers; i++) {
-        updateAttrs(ld.getDrawable(i), scaleType);
+        updateAttrs(ld.getDrawable(i), scaleType, attrs);
       }
     }
   }
@@ -382,6 +787,7 @@ public class RoundedImageView extends ImageView {
   public void setBackgroundDrawable(Drawable background) {
     mBackgroundDrawable = background;
     updateBackgroundDrawableAttrs(true);
+    updateRenderMode();
     //noinspection deprecation
     super.setBackgroundDrawable(mBackgroundDrawable);
   }
@@ -455,14 +861,11 @@ public class RoundedImageView extends ImageView {
     }
     mCornerRadii[corner] = radius;
 
-    updateDrawableAttrs();
-    updateBackgroundDrawableAttrs(false);
-    invalidate();
+    applyAttrs(ATTR_CORNER_RADII);
   }
 
   /**
-   * Set the corner radii of each corner individually. Currently only one unique nonzero value is
-   * supported.
+   * Set the corner radii of each corner individually.
    *
    * @param topLeft radius of the top left corner in px.
    * @param topRight radius of the top right corner in px.
@@ -482,9 +885,7 @@ public class RoundedImageView extends ImageView {
     mCornerRadii[Corner.BOTTOM_LEFT] = bottomLeft;
     mCornerRadii[Corner.BOTTOM_RIGHT] = bottomRight;
 
-    updateDrawableAttrs();
-    updateBackgroundDrawableAttrs(false);
-    invalidate();
+    applyAttrs(ATTR_CORNER_RADII);
   }
 
   public float getBorderWidth() {
@@ -499,9 +900,7 @@ public class RoundedImageView extends ImageView {
     if (mBorderWidth == width) { return; }
 
     mBorderWidth = width;
-    updateDrawableAttrs();
-    updateBackgroundDrawableAttrs(false);
-    invalidate();
+    applyAttrs(ATTR_BORDER_WIDTH);
   }
 
   @ColorInt
@@ -510,6 +909,8 @@ public class RoundedImageView extends ImageView {
   }
 
   public void setBorderColor(@ColorInt int color) {
+    if (!mBorderColor.isStateful() && mBorderColor.getDefaultColor() == color) { return; }
+
     setBorderColor(ColorStateList.valueOf(color));
   }
 
@@ -518,15 +919,13 @@ public class RoundedImageView extends ImageView {
   }
 
   public void setBorderColor(ColorStateList colors) {
-    if (mBorderColor.equals(colors)) { return; }
-
-    mBorderColor =
-        (colors != null) ? colors : ColorStateList.valueOf(RoundedDrawable.DEFAULT_BORDER_COLOR);
-    updateDrawableAttrs();
-    updateBackgroundDrawableAttrs(false);
-    if (mBorderWidth > 0) {
-      invalidate();
+    if (colors == null) {
+      colors = ColorStateList.valueOf(RoundedDrawable.DEFAULT_BORDER_COLOR);
     }
+    if (RoundingSpec.sameColors(mBorderColor, colors)) { return; }
+
+    mBorderColor = colors;
+    applyAttrs(ATTR_BORDER_COLOR, mBorderWidth > 0);
   }
 
   /**
@@ -546,10 +945,10 @@ public class RoundedImageView extends ImageView {
    * @param oval if this {@link RoundedImageView} should be oval.
    */
   public void setOval(boolean oval) {
+    if (mIsOval == oval) { return; }
+
     mIsOval = oval;
-    updateDrawableAttrs();
-    updateBackgroundDrawableAttrs(false);
-    invalidate();
+    applyAttrs(ATTR_OVAL);
   }
 
   public Shader.TileMode getTileModeX() {
@@ -560,9 +959,7 @@ public class RoundedImageView extends ImageView {
     if (this.mTileModeX == tileModeX) { return; }
 
     this.mTileModeX = tileModeX;
-    updateDrawableAttrs();
-    updateBackgroundDrawableAttrs(false);
-    invalidate();
+    applyAttrs(ATTR_TILE_MODE);
   }
 
   public Shader.TileMode getTileModeY() {
@@ -573,8 +970,171 @@ public class RoundedImageView extends ImageView {
     if (this.mTileModeY == tileModeY) { return; }
 
     this.mTileModeY = tileModeY;
-    updateDrawableAttrs();
-    updateBackgroundDrawableAttrs(false);
+    applyAttrs(ATTR_TILE_MODE);
+  }
+
+  /**
+   * @return the interned {@link RoundingSpec} describing this view's current settings.
+   */
+  public RoundingSpec getRoundingSpec() {
+    return new RoundingSpec.Builder()
+        .cornerRadius(
+            mCornerRadii[Corner.TOP_LEFT],
+            mCornerRadii[Corner.TOP_RIGHT],
+            mCornerRadii[Corner.BOTTOM_RIGHT],
+            mCornerRadii[Corner.BOTTOM_LEFT])
+        .borderWidth(mBorderWidth)
+        .borderColor(mBorderColor)
+        .oval(mIsOval)
+        .scaleType(mScaleType)
+        .tileModeX(mTileModeX)
+        .tileModeY(mTileModeY)
+        .build();
+  }
+
+  /**
+   * Applies all settings of a {@link RoundingSpec}, pushing them to the drawables in one pass.
+   *
+   * @param spec the spec to apply.
+   */
+  public void setRoundingSpec(RoundingSpec spec) {
+    readRoundingSpec(spec);
+    applyAttrs(ATTR_ALL);
+  }
+
+  private void readRoundingSpec(RoundingSpec spec) {
+    if (mScaleType != spec.getScaleType()) {
+      mScaleType = spec.getScaleType();
+      updateSuperScaleType();
+    }
+    for (int i = 0, len = mCornerRadii.length; i < len; i++) {
+      mCornerRadii[i] = spec.getCornerRadius(i);
+    }
+    mBorderWidth = spec.getBorderWidth();
+    mBorderColor = spec.getBorderColors();
+    mIsOval = spec.isOval();
+    mTileModeX = spec.getTileModeX();
+    mTileModeY = spec.getTileModeY();
+  }
+
+  /**
+   * @return whether this view clips to its outline instead of converting the drawable when
+   * possible.
+   */
+  public boolean clipsToRoundedOutline() {
+    return mClipToOutline;
+  }
+
+  /**
+   * On API 21+, draw the drawable unmodified and clip the view to a rounded or oval outline
+   * instead of converting it to a {@link RoundedDrawable}. This avoids rasterizing non-bitmap
+   * drawables and gives elevation shadows that match the shape. Falls back to
+   * {@link RoundedDrawable} whenever the outline can't express the settings: mixed corner radii,
+   * borders, non-CLAMP tile modes, {@link ScaleType#MATRIX} or a background.
+   *
+   * @param clip true to prefer outline clipping.
+   */
+  public void setClipToRoundedOutline(boolean clip) {
+    if (mClipToOutline == clip) { return; }
+
+    mClipToOutline = clip;
+    updateRenderMode();
+    invalidate();
+  }
+
+  public boolean isFixedSize() {
+    return mFixedSize;
+  }
+
+  /**
+   * Declares that the view's size doesn't depend on its image, e.g. because it has exact
+   * dimensions, so setting an image of a different size only invalidates instead of requesting a
+   * layout pass up the hierarchy. Images of the same intrinsic size never request a layout.
+   *
+   * @param fixedSize true if the image never affects the view's size.
+   */
+  public void setFixedSize(boolean fixedSize) {
+    mFixedSize = fixedSize;
+  }
+
+  public boolean isReleaseOnDetach() {
+    return mReleaseOnDetach;
+  }
+
+  /**
+   * Releases the converted drawable, its shader and bitmaps while the view is detached from its
+   * window or {@link #GONE}, like rows in a RecyclerView cache or off-screen ViewPager pages, and
+   * converts the source again once the view is shown. {@link #getDrawable()} returns null in the
+   * meantime. The freed bytes are counted by {@link RoundedMetrics}.
+   *
+   * @param release true to release drawables while detached.
+   */
+  public void setReleaseOnDetach(boolean release) {
+    mReleaseOnDetach = release;
+  }
+
+  /**
+   * @return whether {@link #setImageURI(Uri)} and {@link #setImageResource(int)} decode in the
+   * background.
+   */
+  public boolean isAsyncDecoding() {
+    return mAsyncDecode;
+  }
+
+  /**
+   * Decode images set with {@link #setImageURI(Uri)} or bitmap resources set with
+   * {@link #setImageResource(int)} on a background thread, subsampled to the view's size, instead
+   * of decoding them at full resolution on the main thread. The view is empty until the image is
+   * ready, and setting another image cancels a pending decode. XML drawable resources are still
+   * inflated synchronously.
+   *
+   * @param async true to decode in the background.
+   */
+  public void setAsyncDecode(boolean async) {
+    mAsyncDecode = async;
+  }
+
+  /**
+   * @return whether large sources are drawn from a downsampled copy.
+   */
+  public boolean isDownsampling() {
+    return mDownsample;
+  }
+
+  /**
+   * Draw sources that are at least twice as large as the view from a copy scaled down to about the
+   * view's size, see {@link RoundedDrawable#setDownsample(boolean)}.
+   *
+   * @param downsample true to downsample large sources.
+   */
+  public void setDownsample(boolean downsample) {
+    if (mDownsample == downsample) { return; }
+
+    mDownsample = downsample;
+    applyAttrs(ATTR_DOWNSAMPLE);
+  }
+
+  /**
+   * @return whether non-bitmap drawables are rounded at draw time instead of being rasterized.
+   */
+  public boolean delegatesDrawables() {
+    return mDelegateDrawables;
+  }
+
+  /**
+   * Round vector, gradient, animated and other drawables that aren't backed by a bitmap at draw
+   * time with a {@link RoundedDelegateDrawable} instead of rasterizing them into a bitmap at their
+   * intrinsic size. This keeps them sharp at any size, keeps animations running and saves a bitmap
+   * per view, at the cost of an offscreen layer per draw when the corners are rounded. A mutated
+   * background is only affected when it is set after this.
+   *
+   * @param delegate true to wrap non-bitmap drawables.
+   */
+  public void setDelegateDrawables(boolean delegate) {
+    if (mDelegateDrawables == delegate) { return; }
+
+    mDelegateDrawables = delegate;
+    reconvertDrawable();
     invalidate();
   }
 
@@ -0,0 +1,263 @@
+/*
+* Copyright (C) 2017 Vincent Mi
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*      http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package com.makeramen.roundedimageview;
+
+import android.annotation.TargetApi;
+import android.graphics.Bitmap;
+import android.os.Build;
+import android.os.Trace;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Opt-in counters, timings and systrace sections for the library's hot paths. Everything is off by
+ * default and a disabled build only pays for reading one field per instrumented call, so it can be
+ * left in release builds and switched on for a sample of sessions.
+ *
+ * <pre>
+ * RoundedMetrics.setEnabled(true);
+ * ...
+ * RoundedMetrics.Snapshot snapshot = RoundedMetrics.snapshot();
+ * </pre>
+ */
+public final class RoundedMetrics {
+
+  static volatile boolean sEnabled;
+  private static volatile Listener sListener;
+
+  private static final AtomicLong sDraws = new AtomicLong();
+  private static final AtomicLong sShaderBuilds = new AtomicLong();
+  private static final AtomicLong sMatrixUpdates = new AtomicLong();
+  private static final AtomicLong sConversions = new AtomicLong();
+  private static final AtomicLong sConversionNanos = new AtomicLong();
+  private static final AtomicLong sTransforms = new AtomicLong();
+  private static final AtomicLong sTransformNanos = new AtomicLong();
+  private static final AtomicLong sBytesAllocated = new AtomicLong();
+  private static final AtomicLong sBytesReleased = new AtomicLong();
+
+  private RoundedMetrics() {
+  }
+
+  /**
+   * Receives timings as they happen, on the thread that did the work.
+   */
+  public interface Listener {
+    /**
+     * Called after {@link RoundedDrawable#fromDrawable} converted a drawable.
+     *
+     * @param durationNanos the wall time of the conversion.
+     */
+    void onConversion(long durationNanos);
+
+    /**
+     * Called after a Picasso transformation rendered a bitmap.
+     *
+     * @param durationNanos the wall time of the transformation.
+     */
+    void onTransform(long durationNanos);
+
+    /**
+     * Called when the library allocated or took a bitmap from the pool to render into.
+     *
+     * @param bytes the size of the bitmap.
+     */
+    void onBitmapAllocated(long bytes);
+  }
+
+  /**
+   * Turns collection on or off. Counters keep their values while disabled.
+   */
+  public static void setEnabled(boolean enabled) {
+    sEnabled = enabled;
+  }
+
+  public static boolean isEnabled() {
+    return sEnabled;
+  }
+
+  /**
+   * @param listener the listener to notify while enabled, or null to remove it.
+   */
+  public static void setListener(Listener listener) {
+    sListener = listener;
+  }
+
+  /**
+   * @return the current values of all counters.
+   */
+  public static Snapshot snapshot() {
+    return new Snapshot();
+  }
+
+  /**
+   * Resets all counters to 0.
+   */
+  public static void reset() {
+    sDraws.set(0);
+    sShaderBuilds.set(0);
+    sMatrixUpdates.set(0);
+    sConversions.set(0);
+    sConversionNanos.set(0);
+    sTransforms.set(0);
+    sTransformNanos.set(0);
+    sBytesAllocated.set(0);
+    sBytesReleased.set(0);
+  }
+
+  // hooks, callers check sEnabled first so a disabled build never gets here
+
+  static void onDraw() {
+    sDraws.incrementAndGet();
+  }
+
+  static void onShaderBuild() {
+    sShaderBuilds.incrementAndGet();
+  }
+
+  static void onMatrixUpdate() {
+    sMatrixUpdates.incrementAndGet();
+  }
+
+  static void onConversion(long startNanos) {
+    long duration = System.nanoTime() - startNanos;
+    sConversions.incrementAndGet();
+    sConversionNanos.addAndGet(duration);
+    Listener listener = sListener;
+    if (listener != null) {
+      listener.onConversion(duration);
+    }
+  }
+
+  static void onTransform(long startNanos) {
+    long duration = System.nanoTime() - startNanos;
+    sTransforms.incrementAndGet();
+    sTransformNanos.addAndGet(duration);
+    Listener listener = sListener;
+    if (listener != null) {
+      listener.onTransform(duration);
+    }
+  }
+
+  static void onBitmapAllocated(Bitmap bitmap) {
+    if (bitmap == null) {
+      return;
+    }
+    long bytes = LruBitmapPool.byteCount(bitmap);
+    sBytesAllocated.addAndGet(bytes);
+    Listener listener = sListener;
+    if (listener != null) {
+      listener.onBitmapAllocated(bytes);
+    }
+  }
+
+  static void onBytesReleased(long bytes) {
+    sBytesReleased.addAndGet(bytes);
+  }
+
+  @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR2)
+  static void beginSection(String name) {
+    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2) {
+      Trace.beginSection(name);
+    }
+  }
+
+  @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR2)
+  static void endSection() {
+    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2) {
+      Trace.endSection();
+    }
+  }
+
+  /**
+   * The counters at the time {@link #snapshot()} was called.
+   */
+  public static final class Snapshot {
+    private final long mDraws = sDraws.get();
+    private final long mShaderBuilds = sShaderBuilds.get();
+    private final long mMatrixUpdates = sMatrixUpdates.get();
+    private final long mConversions = sConversions.get();
+    private final long mConversionNanos = sConversionNanos.get();
+    private final long mTransforms = sTransforms.get();
+    private final long mTransformNanos = sTransformNanos.get();
+    private final long mBytesAllocated = sBytesAllocated.get();
+    private final long mBytesReleased = sBytesReleased.get();
+
+    Snapshot() {
+    }
+
+    /** @return the number of {@link RoundedDrawable#draw} calls. */
+    public long getDraws() {
+      return mDraws;
+    }
+
+    /** @return the number of bitmap shaders created. */
+    public long getShaderBuilds() {
+      return mShaderBuilds;
+    }
+
+    /** @return the number of times the shader matrix was recomputed. */
+    public long getMatrixUpdates() {
+      return mMatrixUpdates;
+    }
+
+    /** @return the number of drawables converted by {@link RoundedDrawable#fromDrawable}. */
+    public long getConversions() {
+      return mConversions;
+    }
+
+    /** @return the total time spent converting drawables. */
+    public long getConversionNanos() {
+      return mConversionNanos;
+    }
+
+    /** @return the number of Picasso transformations that rendered a bitmap. */
+    public long getTransforms() {
+      return mTransforms;
+    }
+
+    /** @return the total time spent in Picasso transformations. */
+    public long getTransformNanos() {
+      return mTransformNanos;
+    }
+
+    /** @return the bytes of bitmaps allocated or taken from the pool to render into. */
+    public long getBytesAllocated() {
+      return mBytesAllocated;
+    }
+
+    /**
+     * @return the bytes of bitmaps no longer referenced by views set to release their drawables
+     * while detached, see {@link RoundedImageView#setReleaseOnDetach(boolean)}. They are only
+     * freed once nothing else holds on to them.
+     */
+    public long getBytesReleased() {
+      return mBytesReleased;
+    }
+
+    @Override public String toString() {
+      return "RoundedMetrics{draws=" + mDraws
+          + ", shaderBuilds=" + mShaderBuilds
+          + ", matrixUpdates=" + mMatrixUpdates
+          + ", conversions=" + mConversions
+          + ", conversionNanos=" + mConversionNanos
+          + ", transforms=" + mTransforms
+          + ", transformNanos=" + mTransformNanos
+          + ", bytesAllocated=" + mBytesAllocated
+          + ", bytesReleased=" + mBytesReleased
+          + "}";
+    }
+  }
+}
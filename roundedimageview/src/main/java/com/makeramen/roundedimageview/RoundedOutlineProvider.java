@@ -0,0 +1,72 @@
+/*
+* Copyright (C) 2017 Vincent Mi
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*      http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package com.makeramen.roundedimageview;
+
+import android.annotation.TargetApi;
+import android.graphics.Outline;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.os.Build;
+import android.view.View;
+import android.view.ViewOutlineProvider;
+
+/**
+ * Clips a {@link RoundedImageView} to the rect its image is drawn in, so the RenderThread does
+ * the rounding instead of a BitmapShader. Kept in its own class so the view never references
+ * API 21 classes on older platforms.
+ */
+@TargetApi(Build.VERSION_CODES.LOLLIPOP)
+final class RoundedOutlineProvider extends ViewOutlineProvider {
+
+  private final RectF mImageRect = new RectF();
+  private final Rect mOutlineRect = new Rect();
+
+  static void install(RoundedImageView view, boolean clip) {
+    if (clip) {
+      view.setOutlineProvider(new RoundedOutlineProvider());
+    } else if (view.getOutlineProvider() instanceof RoundedOutlineProvider) {
+      view.setOutlineProvider(ViewOutlineProvider.BACKGROUND);
+    }
+    view.setClipToOutline(clip);
+  }
+
+  static void invalidate(RoundedImageView view) {
+    view.invalidateOutline();
+  }
+
+  @Override public void getOutline(View view, Outline outline) {
+    RoundedImageView riv = (RoundedImageView) view;
+    riv.getImageRect(mImageRect);
+    if (!mImageRect.isEmpty()) {
+      mImageRect.round(mOutlineRect);
+    } else {
+      // the image isn't laid out yet, clip to the content area until it is
+      mOutlineRect.set(view.getPaddingLeft(), view.getPaddingTop(),
+          view.getWidth() - view.getPaddingRight(), view.getHeight() - view.getPaddingBottom());
+      if (mOutlineRect.isEmpty()) {
+        outline.setEmpty();
+        return;
+      }
+    }
+
+    if (riv.isOval()) {
+      outline.setOval(mOutlineRect);
+    } else {
+      outline.setRoundRect(mOutlineRect, riv.getMaxCornerRadius());
+    }
+  }
+}
@@ -23,26 +23,32 @@ import android.util.DisplayMetrics;
 import android.util.TypedValue;
 import android.widget.ImageView;
 import com.squareup.picasso.Transformation;
-import java.util.Arrays;
 
 public final class RoundedTransformationBuilder {
 
   private final DisplayMetrics mDisplayMetrics;
 
-  private float[] mCornerRadii = new float[] { 0, 0, 0, 0 };
-
-  private boolean mOval = false;
-  private float mBorderWidth = 0;
-  private ColorStateList mBorderColor =
-      ColorStateList.valueOf(RoundedDrawable.DEFAULT_BORDER_COLOR);
-  private ImageView.ScaleType mScaleType = ImageView.ScaleType.FIT_CENTER;
+  private RoundingSpec.Builder mSpec = new RoundingSpec.Builder();
+  private int mTargetWidth = 0;
+  private int mTargetHeight = 0;
 
   public RoundedTransformationBuilder() {
     mDisplayMetrics = Resources.getSystem().getDisplayMetrics();
   }
 
+  /**
+   * Replaces all rounding settings with the ones of a shared {@link RoundingSpec}.
+   *
+   * @param spec the spec to copy.
+   * @return the builder for chaining.
+   */
+  public RoundedTransformationBuilder roundingSpec(RoundingSpec spec) {
+    mSpec = spec.buildUpon();
+    return this;
+  }
+
   public RoundedTransformationBuilder scaleType(ImageView.ScaleType scaleType) {
-    mScaleType = scaleType;
+    mSpec.scaleType(scaleType);
     return this;
   }
 
@@ -53,10 +59,7 @@ public final class RoundedTransformationBuilder {
    * @return the builder for chaining.
    */
   public RoundedTransformationBuilder cornerRadius(float radius) {
-    mCornerRadii[Corner.TOP_LEFT] = radius;
-    mCornerRadii[Corner.TOP_RIGHT] = radius;
-    mCornerRadii[Corner.BOTTOM_RIGHT] = radius;
-    mCornerRadii[Corner.BOTTOM_LEFT] = radius;
+    mSpec.cornerRadius(radius);
     return this;
   }
 
@@ -68,7 +71,7 @@ public final class RoundedTransformationBuilder {
    * @return the builder for chaning.
    */
   public RoundedTransformationBuilder cornerRadius(@Corner int corner, float radius) {
-    mCornerRadii[corner] = radius;
+    mSpec.cornerRadius(corner, radius);
     return this;
   }
 
@@ -102,7 +105,7 @@ public final class RoundedTransformationBuilder {
    * @return the builder for chaining.
    */
   public RoundedTransformationBuilder borderWidth(float width) {
-    mBorderWidth = width;
+    mSpec.borderWidth(width);
     return this;
   }
 
@@ -113,7 +116,8 @@ public final class RoundedTransformationBuilder {
    * @return the builder for chaining.
    */
   public RoundedTransformationBuilder borderWidthDp(float width) {
-    mBorderWidth = TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP, width, mDisplayMetrics);
+    mSpec.borderWidth(
+        TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP, width, mDisplayMetrics));
     return this;
   }
 
@@ -124,7 +128,7 @@ public final class RoundedTransformationBuilder {
    * @return the builder for chaining.
    */
   public RoundedTransformationBuilder borderColor(int color) {
-    mBorderColor = ColorStateList.valueOf(color);
+    mSpec.borderColor(color);
     return this;
   }
 
@@ -135,7 +139,7 @@ public final class RoundedTransformationBuilder {
    * @return the builder for chaining.
    */
   public RoundedTransformationBuilder borderColor(ColorStateList colors) {
-    mBorderColor = colors;
+    mSpec.borderColor(colors);
     return this;
   }
 
@@ -146,37 +150,83 @@ public final class RoundedTransformationBuilder {
    * @return the builder for chaining.
    */
   public RoundedTransformationBuilder oval(boolean oval) {
-    mOval = oval;
+    mSpec.oval(oval);
     return this;
   }
 
   /**
-   * Creates a {@link Transformation} for use with picasso.
+   * Sets the size of the transformed bitmap in px. The source is scaled into it according to the
+   * scale type, so a large source is rasterized once at the size it will be shown at. By default
+   * the output has the same size as the source.
+   *
+   * @param width the output width in px, or 0 to use the source width.
+   * @param height the output height in px, or 0 to use the source height.
+   * @return the builder for chaining.
+   */
+  public RoundedTransformationBuilder targetSize(int width, int height) {
+    mTargetWidth = width;
+    mTargetHeight = height;
+    return this;
+  }
+
+  /**
+   * Creates a {@link Transformation} for use with picasso. The transformation takes an immutable
+   * snapshot of the builder, later changes to the builder don't affect it.
    *
    * @return the {@link Transformation}
    */
   public Transformation build() {
-    return new Transformation() {
-      @Override public Bitmap transform(Bitmap source) {
-        Bitmap transformed = RoundedDrawable.fromBitmap(source)
-            .setScaleType(mScaleType)
-            .setCornerRadius(mCornerRadii[0], mCornerRadii[1], mCornerRadii[2], mCornerRadii[3])
-            .setBorderWidth(mBorderWidth)
-            .setBorderColor(mBorderColor)
-            .setOval(mOval)
-            .toBitmap();
-        if (!source.equals(transformed)) {
-          source.recycle();
-        }
-        return transformed;
+    return new RoundedTransformation(mSpec.build(), mTargetWidth, mTargetHeight);
+  }
+
+  private static final class RoundedTransformation implements Transformation {
+    private final RoundingSpec mSpec;
+    private final int mTargetWidth;
+    private final int mTargetHeight;
+    private final String mKey;
+
+    RoundedTransformation(RoundingSpec spec, int targetWidth, int targetHeight) {
+      mSpec = spec;
+      mTargetWidth = targetWidth;
+      mTargetHeight = targetHeight;
+      mKey = spec.key() + "s:" + targetWidth + "x" + targetHeight;
+    }
+
+    @Override public Bitmap transform(Bitmap source) {
+      int width = mTargetWidth > 0 ? mTargetWidth : source.getWidth();
+      int height = mTargetHeight > 0 ? mTargetHeight : source.getHeight();
+      if (mSpec.isNoOp() && width == source.getWidth() && height == source.getHeight()) {
+        return source;
       }
 
-      @Override public String key() {
-        return "r:" + Arrays.toString(mCornerRadii)
-            + "b:" + mBorderWidth
-            + "c:" + mBorderColor
-            + "o:" + mOval;
+      if (!RoundedMetrics.sEnabled) {
+        return render(source, width, height);
+      }
+      RoundedMetrics.beginSection("RoundedTransformation#transform");
+      long start = System.nanoTime();
+      try {
+        return render(source, width, height);
+      } finally {
+        RoundedMetrics.onTransform(start);
+        RoundedMetrics.endSection();
+      }
+    }
+
+    private Bitmap render(Bitmap source, int width, int height) {
+      Bitmap transformed = RoundedDrawable.fromBitmap(source)
+          .setRoundingSpec(mSpec)
+          .toBitmap(width, height);
+      if (transformed == null) {
+        return source;
       }
-    };
+      if (!source.equals(transformed)) {
+        RoundedDrawable.releaseBitmap(source);
+      }
+      return transformed;
+    }
+
+    @Override public String key() {
+      return mKey;
+    }
   }
 }
@@ -0,0 +1,294 @@
+/*
+* Copyright (C) 2017 Vincent Mi
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*      http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package com.makeramen.roundedimageview;
+
+import android.content.res.ColorStateList;
+import android.graphics.Shader;
+import android.support.annotation.ColorInt;
+import android.widget.ImageView.ScaleType;
+import com.makeramen.roundedimageview.core.Radii;
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.WeakHashMap;
+
+/**
+ * An immutable description of how an image is rounded: corner radii, border, oval, scale type and
+ * tile modes. Specs are interned, so equal specs built anywhere are the same instance, and their
+ * hash code and {@link #key()} are computed once. They are safe to share between threads, e.g.
+ * with image loader workers.
+ *
+ * <pre>
+ * RoundingSpec spec = new RoundingSpec.Builder()
+ *     .cornerRadius(30)
+ *     .borderWidth(3)
+ *     .scaleType(ScaleType.CENTER_CROP)
+ *     .build();
+ * </pre>
+ */
+public final class RoundingSpec {
+
+  private static final WeakHashMap<RoundingSpec, WeakReference<RoundingSpec>> sInterned =
+      new WeakHashMap<>();
+
+  public static final RoundingSpec DEFAULT = new Builder().build();
+
+  private final float[] mCornerRadii;
+  private final float mBorderWidth;
+  private final ColorStateList mBorderColor;
+  private final boolean mOval;
+  private final ScaleType mScaleType;
+  private final Shader.TileMode mTileModeX;
+  private final Shader.TileMode mTileModeY;
+  private final int mHashCode;
+  private final String mKey;
+
+  private RoundingSpec(Builder builder) {
+    mCornerRadii = builder.mCornerRadii.clone();
+    mBorderWidth = builder.mBorderWidth;
+    mBorderColor = builder.mBorderColor;
+    mOval = builder.mOval;
+    mScaleType = builder.mScaleType;
+    mTileModeX = builder.mTileModeX;
+    mTileModeY = builder.mTileModeY;
+
+    int result = Arrays.hashCode(mCornerRadii);
+    result = 31 * result + Float.floatToIntBits(mBorderWidth);
+    result = 31 * result + mBorderColor.getDefaultColor();
+    result = 31 * result + (mOval ? 1 : 0);
+    result = 31 * result + mScaleType.hashCode();
+    result = 31 * result + mTileModeX.hashCode();
+    result = 31 * result + mTileModeY.hashCode();
+    mHashCode = result;
+
+    // ColorStateList has no stable toString(), key on the color drawn in the default state
+    mKey = "r:" + mCornerRadii[Corner.TOP_LEFT]
+        + "," + mCornerRadii[Corner.TOP_RIGHT]
+        + "," + mCornerRadii[Corner.BOTTOM_RIGHT]
+        + "," + mCornerRadii[Corner.BOTTOM_LEFT]
+        + "b:" + mBorderWidth
+        + "c:" + Integer.toHexString(mBorderColor.getDefaultColor())
+        + "o:" + mOval
+        + "s:" + mScaleType.name()
+        + "t:" + mTileModeX.name() + "," + mTileModeY.name();
+  }
+
+  /**
+   * @param corner the corner.
+   * @return the radius of the corner in px.
+   */
+  public float getCornerRadius(@Corner int corner) {
+    return mCornerRadii[corner];
+  }
+
+  public float getBorderWidth() {
+    return mBorderWidth;
+  }
+
+  public ColorStateList getBorderColors() {
+    return mBorderColor;
+  }
+
+  public boolean isOval() {
+    return mOval;
+  }
+
+  public ScaleType getScaleType() {
+    return mScaleType;
+  }
+
+  public Shader.TileMode getTileModeX() {
+    return mTileModeX;
+  }
+
+  public Shader.TileMode getTileModeY() {
+    return mTileModeY;
+  }
+
+  /**
+   * @return true if this spec leaves an image drawn at its own size unchanged.
+   */
+  public boolean isNoOp() {
+    if (mOval || mBorderWidth > 0) {
+      return false;
+    }
+    for (float r : mCornerRadii) {
+      if (r > 0) { return false; }
+    }
+    return true;
+  }
+
+  /**
+   * @return a string identifying the output of rendering with this spec, for use as a cache key.
+   */
+  public String key() {
+    return mKey;
+  }
+
+  public Builder buildUpon() {
+    return new Builder(this);
+  }
+
+  @Override public boolean equals(Object o) {
+    if (this == o) { return true; }
+    if (!(o instanceof RoundingSpec)) { return false; }
+
+    RoundingSpec other = (RoundingSpec) o;
+    return mHashCode == other.mHashCode
+        && Arrays.equals(mCornerRadii, other.mCornerRadii)
+        && Float.compare(mBorderWidth, other.mBorderWidth) == 0
+        && sameColors(mBorderColor, other.mBorderColor)
+        && mOval == other.mOval
+        && mScaleType == other.mScaleType
+        && mTileModeX == other.mTileModeX
+        && mTileModeY == other.mTileModeY;
+  }
+
+  @Override public int hashCode() {
+    return mHashCode;
+  }
+
+  @Override public String toString() {
+    return "RoundingSpec{" + mKey + "}";
+  }
+
+  static boolean sameColors(ColorStateList a, ColorStateList b) {
+    // stateful lists can't be compared by value on all platforms
+    return a == b
+        || (!a.isStateful() && !b.isStateful() && a.getDefaultColor() == b.getDefaultColor());
+  }
+
+  private static RoundingSpec intern(RoundingSpec spec) {
+    synchronized (sInterned) {
+      WeakReference<RoundingSpec> ref = sInterned.get(spec);
+      RoundingSpec interned = ref != null ? ref.get() : null;
+      if (interned == null) {
+        sInterned.put(spec, new WeakReference<>(spec));
+        interned = spec;
+      }
+      return interned;
+    }
+  }
+
+  public static final class Builder {
+    private final float[] mCornerRadii = new float[] { 0, 0, 0, 0 };
+    private float mBorderWidth = 0;
+    private ColorStateList mBorderColor =
+        ColorStateList.valueOf(RoundedDrawable.DEFAULT_BORDER_COLOR);
+    private boolean mOval = false;
+    private ScaleType mScaleType = ScaleType.FIT_CENTER;
+    private Shader.TileMode mTileModeX = Shader.TileMode.CLAMP;
+    private Shader.TileMode mTileModeY = Shader.TileMode.CLAMP;
+
+    public Builder() {
+    }
+
+    Builder(RoundingSpec spec) {
+      System.arraycopy(spec.mCornerRadii, 0, mCornerRadii, 0, mCornerRadii.length);
+      mBorderWidth = spec.mBorderWidth;
+      mBorderColor = spec.mBorderColor;
+      mOval = spec.mOval;
+      mScaleType = spec.mScaleType;
+      mTileModeX = spec.mTileModeX;
+      mTileModeY = spec.mTileModeY;
+    }
+
+    /**
+     * Set corner radius for all corners in px.
+     *
+     * @param radius the radius in px
+     * @return the builder for chaining.
+     */
+    public Builder cornerRadius(float radius) {
+      return cornerRadius(radius, radius, radius, radius);
+    }
+
+    /**
+     * Set corner radius for a specific corner in px.
+     *
+     * @param corner the corner to set.
+     * @param radius the radius in px.
+     * @return the builder for chaining.
+     */
+    public Builder cornerRadius(@Corner int corner, float radius) {
+      mCornerRadii[corner] = radius;
+      return this;
+    }
+
+    /**
+     * Set the corner radii of all the corners in px.
+     *
+     * @param topLeft top left corner radius.
+     * @param topRight top right corner radius
+     * @param bottomRight bottom right corner radius.
+     * @param bottomLeft bottom left corner radius.
+     * @return the builder for chaining.
+     */
+    public Builder cornerRadius(float topLeft, float topRight, float bottomRight,
+        float bottomLeft) {
+      mCornerRadii[Corner.TOP_LEFT] = topLeft;
+      mCornerRadii[Corner.TOP_RIGHT] = topRight;
+      mCornerRadii[Corner.BOTTOM_RIGHT] = bottomRight;
+      mCornerRadii[Corner.BOTTOM_LEFT] = bottomLeft;
+      return this;
+    }
+
+    public Builder borderWidth(float width) {
+      mBorderWidth = width;
+      return this;
+    }
+
+    public Builder borderColor(@ColorInt int color) {
+      return borderColor(ColorStateList.valueOf(color));
+    }
+
+    public Builder borderColor(ColorStateList colors) {
+      mBorderColor = colors != null ? colors : ColorStateList.valueOf(0);
+      return this;
+    }
+
+    public Builder oval(boolean oval) {
+      mOval = oval;
+      return this;
+    }
+
+    public Builder scaleType(ScaleType scaleType) {
+      mScaleType = scaleType != null ? scaleType : ScaleType.FIT_CENTER;
+      return this;
+    }
+
+    public Builder tileModeX(Shader.TileMode tileModeX) {
+      mTileModeX = tileModeX != null ? tileModeX : Shader.TileMode.CLAMP;
+      return this;
+    }
+
+    public Builder tileModeY(Shader.TileMode tileModeY) {
+      mTileModeY = tileModeY != null ? tileModeY : Shader.TileMode.CLAMP;
+      return this;
+    }
+
+    /**
+     * @return the interned {@link RoundingSpec} for the current values.
+     * @throws IllegalArgumentException if a radius is negative, infinite or NaN.
+     */
+    public RoundingSpec build() {
+      for (float r : mCornerRadii) {
+        Radii.check(r);
+      }
+      return intern(new RoundingSpec(this));
+    }
+  }
+}
@@ -0,0 +1,188 @@
+/*
+* Copyright (C) 2017 Vincent Mi
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*      http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package com.makeramen.roundedimageview;
+
+import android.content.ContentResolver;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.net.Uri;
+import android.os.Build;
+import android.util.TypedValue;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Decodes bitmaps subsampled to about the size they are displayed at, for
+ * {@link RoundedImageView#setAsyncDecode(boolean)}. Meant to run off the main thread.
+ */
+final class SubsampledDecoder {
+
+  private SubsampledDecoder() {
+  }
+
+  /**
+   * @return true if the resource is an encoded image rather than an XML drawable, which has to be
+   * inflated by {@link Resources#getDrawable(int)} instead.
+   */
+  static boolean isBitmapResource(Resources res, int resId) {
+    TypedValue value = new TypedValue();
+    try {
+      res.getValue(resId, value, true);
+    } catch (Resources.NotFoundException e) {
+      return false;
+    }
+    return value.string != null && !value.string.toString().endsWith(".xml");
+  }
+
+  /**
+   * @return the largest power of two sample size that keeps both dimensions at least as large as
+   * requested.
+   */
+  static int sampleSize(int width, int height, int reqWidth, int reqHeight) {
+    int sampleSize = 1;
+    if (reqWidth <= 0 || reqHeight <= 0) {
+      return sampleSize;
+    }
+    while (width / (sampleSize * 2) >= reqWidth && height / (sampleSize * 2) >= reqHeight) {
+      sampleSize *= 2;
+    }
+    return sampleSize;
+  }
+
+  /**
+   * Decodes a bitmap resource with density scaling like {@link Resources#getDrawable(int)}, into a
+   * bitmap from the {@link BitmapPool} when one is set and the platform can reuse bitmaps of a
+   * different size (API 19+).
+   */
+  static Bitmap decodeResource(final Resources res, final int resId, int reqWidth, int reqHeight)
+      throws IOException {
+    final TypedValue value = new TypedValue();
+    return decode(new Source() {
+      @Override public Bitmap decode(BitmapFactory.Options opts) throws IOException {
+        InputStream is = res.openRawResource(resId, value);
+        try {
+          return BitmapFactory.decodeResourceStream(res, value, is, null, opts);
+        } finally {
+          is.close();
+        }
+      }
+    }, reqWidth, reqHeight);
+  }
+
+  /**
+   * Decodes the image at {@code uri}, into a bitmap from the {@link BitmapPool} when one is set and
+   * the platform can reuse bitmaps of a different size (API 19+).
+   */
+  static Bitmap decodeUri(final ContentResolver resolver, final Uri uri, int reqWidth,
+      int reqHeight) throws IOException {
+    return decode(new Source() {
+      @Override public Bitmap decode(BitmapFactory.Options opts) throws IOException {
+        return decodeStream(resolver, uri, opts);
+      }
+    }, reqWidth, reqHeight);
+  }
+
+  /**
+   * Reads the bounds, then decodes subsampled to the requested size, into a pooled bitmap if
+   * possible.
+   */
+  private static Bitmap decode(Source source, int reqWidth, int reqHeight) throws IOException {
+    BitmapFactory.Options opts = new BitmapFactory.Options();
+    opts.inJustDecodeBounds = true;
+    source.decode(opts);
+    if (opts.outWidth <= 0 || opts.outHeight <= 0) {
+      return null;
+    }
+
+    opts.inJustDecodeBounds = false;
+    opts.inSampleSize = sampleSize(opts.outWidth, opts.outHeight, reqWidth, reqHeight);
+
+    BitmapPool pool = RoundedDrawable.getBitmapPool();
+    Bitmap reuse = null;
+    if (pool != null && Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+      float scale = densityScale(opts);
+      reuse = pool.get(decodedSize(opts.outWidth, opts.inSampleSize, scale),
+          decodedSize(opts.outHeight, opts.inSampleSize, scale), Bitmap.Config.ARGB_8888);
+      if (reuse != null) {
+        opts.inMutable = true;
+        opts.inBitmap = reuse;
+      }
+    }
+
+    try {
+      Bitmap bitmap = source.decode(opts);
+      if (bitmap == null && reuse != null) {
+        pool.put(reuse);
+      }
+      return bitmap;
+    } catch (IllegalArgumentException e) {
+      // the pooled bitmap couldn't be reused after all
+      if (reuse == null) {
+        throw e;
+      }
+      opts.inBitmap = null;
+      pool.put(reuse);
+      return source.decode(opts);
+    } catch (IOException e) {
+      if (reuse != null) {
+        pool.put(reuse);
+      }
+      throw e;
+    }
+  }
+
+  /**
+   * @return the factor the decoder scales by for density, which decodeResourceStream() sets up
+   * and already applies to the reported bounds, 1 for uris.
+   */
+  private static float densityScale(BitmapFactory.Options opts) {
+    if (!opts.inScaled || opts.inDensity == 0 || opts.inTargetDensity == 0) {
+      return 1f;
+    }
+    return (float) opts.inTargetDensity / opts.inDensity;
+  }
+
+  /**
+   * @return the decoded size of a dimension reported as {@code scaledSize} by a bounds decode,
+   * which is subsampled before it's scaled for density. Rounding up can only make the pooled
+   * bitmap larger than needed, which is allowed.
+   */
+  private static int decodedSize(int scaledSize, int sampleSize, float scale) {
+    // the largest source size the decoder would have scaled to scaledSize
+    int size = (int) Math.ceil((scaledSize + 0.5f) / scale) - 1;
+    int sampled = (size + sampleSize - 1) / sampleSize;
+    return (int) (sampled * scale + 0.5f);
+  }
+
+  private interface Source {
+    Bitmap decode(BitmapFactory.Options opts) throws IOException;
+  }
+
+  private static Bitmap decodeStream(ContentResolver resolver, Uri uri,
+      BitmapFactory.Options opts) throws IOException {
+    InputStream is = resolver.openInputStream(uri);
+    if (is == null) {
+      throw new IOException("Unable to open " + uri);
+    }
+    try {
+      return BitmapFactory.decodeStream(is, null, opts);
+    } finally {
+      is.close();
+    }
+  }
+}